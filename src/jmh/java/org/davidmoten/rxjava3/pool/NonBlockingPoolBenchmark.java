@@ -0,0 +1,186 @@
+package org.davidmoten.rxjava3.pool;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Measures the {@code Pool.member()} to {@code Member.checkin()} cycle of a
+ * {@link NonBlockingPool}. Run with
+ *
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec
+ * </pre>
+ *
+ * JMH options can be passed with {@code -Djmh.args="..."} (for example
+ * {@code -Djmh.args="NonBlockingPoolBenchmark -p maxSize=4 -t 8"}).
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+public class NonBlockingPoolBenchmark {
+
+    private static final int CYCLES_PER_INVOCATION = 1000;
+
+    @Param({ "1", "4", "16" })
+    public int maxSize;
+
+    @Param({ "computation", "io", "executor", "trampoline" })
+    public String scheduler;
+
+    // 0 disables health checks
+    @Param({ "0", "1" })
+    public long idleTimeBeforeHealthCheckMs;
+
+    // 0 means emissions to waiting subscribers always jump threads
+    @Param({ "0", "16" })
+    public int maxDirectEmitDepth;
+
+    private ExecutorService executor;
+
+    private NonBlockingPool<Integer> pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AtomicInteger count = new AtomicInteger();
+        pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .idleTimeBeforeHealthCheck(idleTimeBeforeHealthCheckMs, TimeUnit.MILLISECONDS) //
+                .maxSize(maxSize) //
+                // the trampoline scheduler would block on the periodic idle sweep
+                .maxIdleTime(scheduler.equals("trampoline") ? 0 : 1, TimeUnit.MINUTES) //
+                .maxDirectEmitDepth(maxDirectEmitDepth) //
+                .scheduler(createScheduler()) //
+                .build();
+        // create the members up front so that creation is not measured
+        Flowable.range(1, maxSize) //
+                .flatMapSingle(i -> pool.member(), false, maxSize) //
+                .toList() //
+                .blockingGet() //
+                .forEach(Member::checkin);
+    }
+
+    private Scheduler createScheduler() {
+        switch (scheduler) {
+        case "computation":
+            return Schedulers.computation();
+        case "io":
+            return Schedulers.io();
+        case "executor":
+            executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            return Schedulers.from(executor);
+        case "trampoline":
+            return Schedulers.trampoline();
+        default:
+            throw new IllegalArgumentException("unknown scheduler: " + scheduler);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Integer checkoutCheckinThroughput() {
+        return checkoutCheckin();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Integer checkoutCheckinSampleTime() {
+        return checkoutCheckin();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Integer acquireCheckinThroughput() throws Exception {
+        return acquireCheckin();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Integer acquireCheckinSampleTime() throws Exception {
+        return acquireCheckin();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(CYCLES_PER_INVOCATION)
+    public Integer concurrentCheckoutCheckinThroughput(Concurrency concurrency) {
+        return concurrentCheckoutCheckin(concurrency.value);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(CYCLES_PER_INVOCATION)
+    public Integer concurrentCheckoutCheckinSampleTime(Concurrency concurrency) {
+        return concurrentCheckoutCheckin(concurrency.value);
+    }
+
+    private Integer checkoutCheckin() {
+        Member<Integer> m = pool.member().blockingGet();
+        Integer value = m.value();
+        m.checkin();
+        return value;
+    }
+
+    private Integer acquireCheckin() throws Exception {
+        Member<Integer> m = pool.acquire(1, TimeUnit.MINUTES);
+        Integer value = m.value();
+        m.checkin();
+        return value;
+    }
+
+    private Integer concurrentCheckoutCheckin(int concurrency) {
+        return Flowable.range(1, CYCLES_PER_INVOCATION) //
+                .flatMapSingle(i -> pool.member(), false, concurrency) //
+                .map(m -> {
+                    Integer value = m.value();
+                    m.checkin();
+                    return value;
+                }) //
+                .blockingLast();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Concurrency {
+
+        // maximum number of outstanding checkouts
+        @Param({ "1", "4", "16" })
+        public int value;
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.davidmoten.rxjava3.pool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * Compares checkout-checkin throughput of a {@link NonBlockingPool} with a
+ * {@link StripedNonBlockingPool} as the number of threads grows. Run with
+ * 
+ * <pre>
+ * mvn -P benchmark test-compile exec:exec -Djmh.args="StripedNonBlockingPoolBenchmark -t 1"
+ * </pre>
+ * 
+ * and repeat with increasing {@code -t} (up to the number of cores) to see how
+ * throughput scales. By default one thread per core is used.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Threads(Threads.MAX)
+public class StripedNonBlockingPoolBenchmark {
+
+    @Param({ "64" })
+    public int maxSize;
+
+    // 0 means a plain NonBlockingPool
+    @Param({ "0", "1", "4", "16" })
+    public int stripes;
+
+    private Pool<Integer> pool;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AtomicInteger count = new AtomicInteger();
+        NonBlockingPool.Builder<Integer> builder = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .idleTimeBeforeHealthCheck(0, TimeUnit.MILLISECONDS) //
+                .maxSize(maxSize) //
+                .maxIdleTime(1, TimeUnit.MINUTES) //
+                .scheduler(Schedulers.computation());
+        pool = stripes == 0 ? builder.build() : builder.buildStriped(stripes);
+        // create the members up front so that creation is not measured
+        pool.checkinAll(Flowable.range(1, maxSize) //
+                .flatMapSingle(i -> pool.member(), false, maxSize) //
+                .toList() //
+                .blockingGet());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pool.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Integer checkoutCheckinThroughput() {
+        Member<Integer> m = pool.member().blockingGet();
+        Integer value = m.value();
+        m.checkin();
+        return value;
+    }
+
+}
@@ -1,12 +1,15 @@
 package org.davidmoten.rxjava3.pool;
 
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiFunction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 
 final class DecoratingMember<T> implements Member<T> {
@@ -17,25 +20,68 @@ final class DecoratingMember<T> implements Member<T> {
     private final MemberSingle<T> memberSingle;
     private final BiFunction<? super T, ? super Checkin, ? extends T> checkinDecorator;
 
-    // synchronized by MemberSingle.drain() wip
-    private Disposable scheduled;
+    // index of this member in MemberSingle.members
+    private final int index;
 
-    // synchronized by MemberSingle.drain() wip
-    private boolean releasing;
+    // set by MemberSingle.drain() and cleared on initialization. Volatile because a
+    // member that is already queued in MemberSingle.initializedAvailable is not
+    // queued again when initialized so the drain loop must see the cleared flag
+    private volatile boolean releasing;
 
-    // synchronized by MemberSingle.drain() wip
-    private boolean checking;
+    // volatile for the same reason as releasing
+    private volatile boolean checking;
 
     // synchronized by MemberSingle.drain() wip
     // not subject to word tearing, because of ordering in drain loop (will only
     // read this value if check has finished)
     private long lastCheckTime;
 
+    // scheduler time in ms at which a background health check is due (only used if
+    // background health checks are enabled), synchronized like lastCheckTime
+    private long backgroundCheckTime;
+
+    // time of the last checkin (or NO_CHECKIN if the value has been disposed)
+    // used by the idle sweep in MemberSingle.drain() to release idle members.
+    // Volatile because written on checkin outside of the drain loop
+    private volatile long lastCheckinTime = NO_CHECKIN;
+
+    private static final long NO_CHECKIN = Long.MIN_VALUE;
+
+    // System.nanoTime() of the last checkout, only set if metrics are enabled.
+    // Written on emission and read on checkin which happens-after emission
+    private long checkoutTime;
+
+    // scheduler time in ms at which the value passes its maxLifetime (including
+    // jitter). Written before the value (volatile) on initialization
+    private long expiryTime = Long.MAX_VALUE;
+
+    // The following are only used if leak detection is enabled.
+
+    // true from emission until checkin (or reclaim by leak detection)
+    private final AtomicBoolean checkedOut = new AtomicBoolean();
+
+    // scheduler time in ms of the last checkout, published by checkedOut
+    private long leakCheckoutTime;
+
+    // sampled stack trace of the last checkout (may be null), published by
+    // checkedOut
+    private Throwable leakCheckoutTrace;
+
+    // true if the current checkout has been reported as a leak
+    // synchronized by MemberSingle.drain() wip (initialized before publication by
+    // checkedOut)
+    private boolean leakReported;
+
     DecoratingMember(T value, BiFunction<? super T, ? super Checkin, ? extends T> checkinDecorator,
-            MemberSingle<T> memberSingle) {
+            MemberSingle<T> memberSingle, int index) {
         this.checkinDecorator = checkinDecorator;
         this.memberSingle = memberSingle;
         this.value = value;
+        this.index = index;
+    }
+
+    int index() {
+        return index;
     }
 
     @Override
@@ -48,6 +94,10 @@ final class DecoratingMember<T> implements Member<T> {
         memberSingle.pool.checkin(this);
     }
 
+    boolean isInitialized() {
+        return value != null;
+    }
+
     public void markAsReleasing() {
         this.releasing = true;
     }
@@ -66,43 +116,77 @@ final class DecoratingMember<T> implements Member<T> {
 
     @Override
     public void disposeValue() {
-        try {
-            if (scheduled != null) {
-                scheduled.dispose();
-                scheduled = null;
+        disposeValue(null);
+    }
+
+    /**
+     * Disposes the value and then runs {@code onDisposed} (if non-null). If an
+     * asyncDisposer is set then onDisposed is run when the disposal terminates
+     * (possibly on another thread).
+     * 
+     * @param onDisposed action to run once the value is disposed, may be null
+     */
+    void disposeValue(Runnable onDisposed) {
+        T v = value;
+        // clear the state first because onDisposed may reinitialize this member
+        value = null;
+        checking = false;
+        lastCheckinTime = NO_CHECKIN;
+        log.debug("disposing value {}", v);
+        MemberBudget budget = memberSingle.pool.budget;
+        final Runnable done;
+        if (budget != null && v != null) {
+            // return the permit once the value has been disposed
+            done = () -> {
+                budget.release();
+                run(onDisposed);
+            };
+        } else {
+            done = onDisposed;
+        }
+        Function<? super T, ? extends Completable> asyncDisposer = memberSingle.pool.asyncDisposer;
+        if (asyncDisposer != null && v != null) {
+            Completable c;
+            try {
+                c = asyncDisposer.apply(v);
+            } catch (Throwable e) {
+                RxJavaPlugins.onError(e);
+                run(done);
+                return;
             }
-            log.debug("disposing value {}", value);
-            memberSingle.pool.disposer.accept(value);
-        } catch (Throwable e) {
-            // make action configurable
-            RxJavaPlugins.onError(e);
-        } finally {
-            value = null;
-            checking = false;
+            c.subscribe(() -> run(done), e -> {
+                RxJavaPlugins.onError(e);
+                run(done);
+            });
+        } else {
+            try {
+                if (asyncDisposer == null) {
+                    memberSingle.pool.disposer.accept(v);
+                }
+            } catch (Throwable e) {
+                // make action configurable
+                RxJavaPlugins.onError(e);
+            }
+            run(done);
         }
     }
 
-    public void setValueAndClearReleasingFlag(T value) {
-        this.value = value;
-        this.releasing = false;
-        this.lastCheckTime = now();
+    private static void run(Runnable action) {
+        if (action != null) {
+            action.run();
+        }
     }
 
-    void scheduleRelease() {
-        if (scheduled != null) {
-            scheduled.dispose();
-            log.debug("cancelled scheduled release of {}", this);
-        }
-        long maxIdleTimeMs = memberSingle.pool.maxIdleTimeMs;
-        if (maxIdleTimeMs > 0) {
-            // TODO make `this` runnable to save lambda allocation
-            scheduled = memberSingle.pool.scheduler //
-                    .scheduleDirect( //
-                            () -> memberSingle.addToBeReleased(this), //
-                            maxIdleTimeMs, //
-                            TimeUnit.MILLISECONDS);
-            log.debug("scheduled release in {}ms of {}", maxIdleTimeMs, this);
+    public void setValueAndClearReleasingFlag(T value) {
+        long now = now();
+        long lifetime = memberSingle.pool.maxLifetimeMs;
+        if (lifetime > 0) {
+            long jitter = memberSingle.pool.maxLifetimeJitterMs;
+            expiryTime = now + lifetime - (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
         }
+        this.value = value;
+        this.releasing = false;
+        setLastCheckTime(now);
     }
 
     @Override
@@ -112,7 +196,69 @@ final class DecoratingMember<T> implements Member<T> {
 
     public void markAsChecked() {
         checking = false;
-        lastCheckTime = now();
+        setLastCheckTime(now());
+    }
+
+    void markAsCheckedIn() {
+        long now = now();
+        checking = false;
+        setLastCheckTime(now);
+        if (memberSingle.pool.maxIdleTimeMs > 0) {
+            lastCheckinTime = now;
+        }
+    }
+
+    void markAsCheckedOut(long nanoTime) {
+        this.checkoutTime = nanoTime;
+    }
+
+    long checkoutTime() {
+        return checkoutTime;
+    }
+
+    void markAsCheckedOutForLeakDetection(long timeMs, Throwable trace) {
+        leakCheckoutTime = timeMs;
+        leakCheckoutTrace = trace;
+        leakReported = false;
+        checkedOut.set(true);
+    }
+
+    // returns false if the member has already been checked in or reclaimed
+    boolean tryCheckinForLeakDetection() {
+        return checkedOut.compareAndSet(true, false);
+    }
+
+    // must only be called by the thread that moved MemberSingle.wip from 0
+    boolean isLeakToReport(long now, long thresholdMs) {
+        return checkedOut.get() && !leakReported && now - leakCheckoutTime >= thresholdMs;
+    }
+
+    // must only be called by the thread that moved MemberSingle.wip from 0
+    Throwable reportLeak() {
+        leakReported = true;
+        return leakCheckoutTrace;
+    }
+
+    private void setLastCheckTime(long now) {
+        lastCheckTime = now;
+        long interval = memberSingle.pool.backgroundHealthCheckIntervalMs;
+        if (interval > 0) {
+            long jitter = memberSingle.pool.backgroundHealthCheckJitterMs;
+            backgroundCheckTime = now + interval - (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter + 1) : 0);
+        }
+    }
+
+    boolean isBackgroundCheckDue(long now) {
+        return now >= backgroundCheckTime;
+    }
+
+    boolean isLifetimeExpired(long now) {
+        return now >= expiryTime;
+    }
+
+    boolean isIdleExpired(long now, long maxIdleTimeMs) {
+        long t = lastCheckinTime;
+        return t != NO_CHECKIN && now - t >= maxIdleTimeMs;
     }
 
     private long now() {
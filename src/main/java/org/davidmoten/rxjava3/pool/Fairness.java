@@ -0,0 +1,24 @@
+package org.davidmoten.rxjava3.pool;
+
+/**
+ * The order in which a {@link NonBlockingPool} emits members to waiting
+ * subscribers (see {@link NonBlockingPool.Builder#fairness(Fairness)}).
+ */
+public enum Fairness {
+
+    /**
+     * Waiting subscribers are emitted to in order of arrival with precedence
+     * given to higher priority subscribers (see
+     * {@link NonBlockingPool#member(int)}). A subscriber's precedence grows the
+     * longer it waits so no subscriber is starved. This is the default.
+     */
+    PRIORITY,
+
+    /**
+     * Waiting subscribers are emitted to strictly in order of arrival (priorities
+     * are ignored) so the longest waiting subscriber is always emitted to next and
+     * the worst-case wait is bounded.
+     */
+    FIFO;
+
+}
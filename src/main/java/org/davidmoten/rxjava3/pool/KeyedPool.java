@@ -0,0 +1,408 @@
+package org.davidmoten.rxjava3.pool;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.functions.Predicate;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+/**
+ * A pool of members per key (for example per database shard or host) that
+ * share a global limit on the number of members. Each active key has its own
+ * {@link NonBlockingPool} (sub-pool) with its own limit. When the global limit
+ * has been reached and a key needs another member an idle member of the least
+ * recently used other key is released to make room.
+ *
+ * <p>
+ * Sub-pools are created on first use of a key and dropped once they have no
+ * members and nothing waiting, so memory use is proportional to the number of
+ * active keys. All sub-pools share one scheduler and one periodic sweep.
+ *
+ * @param <K> key type
+ * @param <T> member type
+ */
+public final class KeyedPool<K, T> implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(KeyedPool.class);
+
+    private final Map<K, SubPool<T>> pools = new ConcurrentHashMap<>();
+    private final Builder<K, T> builder;
+    private final Scheduler scheduler;
+
+    // the number of members that can still be created across all keys
+    private final AtomicInteger permits;
+
+    // sub-pools waiting for a permit
+    private final Queue<SubPool<T>> starved = new ConcurrentLinkedQueue<>();
+
+    private final Disposable sweeper;
+
+    private volatile boolean closed;
+
+    KeyedPool(Builder<K, T> builder) {
+        Preconditions.checkNotNull(builder);
+        this.builder = builder;
+        this.permits = new AtomicInteger(builder.maxSize);
+        this.scheduler = builder.scheduler;
+        this.sweeper = scheduler.schedulePeriodicallyDirect(this::sweep, builder.sweepIntervalMs,
+                builder.sweepIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static <K, T> Builder<K, T> factory(Function<? super K, ? extends T> factory) {
+        return new Builder<K, T>(factory);
+    }
+
+    /**
+     * Returns a Single that emits a member for the given key (see
+     * {@link NonBlockingPool#member()}).
+     *
+     * @param key key of the sub-pool
+     * @return a Single that emits a member for the key
+     */
+    public Single<Member<T>> member(K key) {
+        Preconditions.checkNotNull(key);
+        return Single.defer(() -> {
+            if (closed) {
+                return Single.error(new PoolClosedException());
+            }
+            SubPool<T> sub = acquire(key);
+            return sub.pool.member().doFinally(sub::finished);
+        });
+    }
+
+    // returns the sub-pool for the key having registered a subscriber so that the
+    // sub-pool is not dropped until the subscriber has finished
+    private SubPool<T> acquire(K key) {
+        while (true) {
+            SubPool<T> sub = pools.computeIfAbsent(key, this::createSubPool);
+            int n = sub.subscribers.get();
+            // n < 0 while the sweep is checking whether the sub-pool can be dropped
+            if (n >= 0 && sub.subscribers.compareAndSet(n, n + 1)) {
+                sub.lastUsed = scheduler.now(TimeUnit.MILLISECONDS);
+                return sub;
+            }
+        }
+    }
+
+    private SubPool<T> createSubPool(K key) {
+        log.debug("creating sub-pool for key {}", key);
+        return new SubPool<T>(this, builder.subPoolBuilder(key));
+    }
+
+    /**
+     * Returns the number of keys that currently have a sub-pool.
+     *
+     * @return number of active keys
+     */
+    public int activeKeys() {
+        return pools.size();
+    }
+
+    private void sweep() {
+        // retry evictions for starved sub-pools in case an evicted member was checked
+        // out before it could be released
+        for (SubPool<T> sub : starved) {
+            sub.evicting.set(false);
+            requestEviction(sub);
+        }
+        for (Map.Entry<K, SubPool<T>> entry : pools.entrySet()) {
+            SubPool<T> sub = entry.getValue();
+            sub.pool.sweep();
+            // block new subscribers while checking if the sub-pool can be dropped
+            if (sub.subscribers.compareAndSet(0, -1)) {
+                if (sub.pool.isEmpty()) {
+                    log.debug("dropping sub-pool for key {}", entry.getKey());
+                    pools.remove(entry.getKey(), sub);
+                    starved.remove(sub);
+                    sub.pool.close();
+                } else {
+                    sub.subscribers.set(0);
+                }
+            }
+        }
+    }
+
+    private boolean tryAcquirePermit(SubPool<T> sub) {
+        while (true) {
+            int n = permits.get();
+            if (n == 0) {
+                break;
+            } else if (permits.compareAndSet(n, n - 1)) {
+                return true;
+            }
+        }
+        if (sub.starved.compareAndSet(false, true)) {
+            starved.offer(sub);
+        }
+        requestEviction(sub);
+        // a permit may have been released before sub was queued
+        if (permits.get() > 0) {
+            wakeStarved();
+        }
+        return false;
+    }
+
+    private void releasePermit() {
+        permits.incrementAndGet();
+        wakeStarved();
+    }
+
+    private void wakeStarved() {
+        SubPool<T> sub = starved.poll();
+        if (sub != null) {
+            sub.starved.set(false);
+            sub.evicting.set(false);
+            sub.pool.drainMembers();
+        }
+    }
+
+    // releases an idle member of the least recently used sub-pool other than sub
+    // unless an eviction is already under way on behalf of sub
+    private void requestEviction(SubPool<T> sub) {
+        if (!sub.evicting.compareAndSet(false, true)) {
+            return;
+        }
+        SubPool<T> coldest = null;
+        for (SubPool<T> p : pools.values()) {
+            if (p != sub && (coldest == null || p.lastUsed < coldest.lastUsed) && p.pool.idleCount() > 0) {
+                coldest = p;
+            }
+        }
+        if (coldest != null) {
+            log.debug("evicting idle member to free budget");
+            coldest.pool.evictIdle();
+        } else {
+            // nothing idle yet, an idle member is evicted when one turns up
+            sub.evicting.set(false);
+        }
+    }
+
+    // called when sub has idle members and nothing waiting
+    private void idle(SubPool<T> sub) {
+        SubPool<T> next = starved.peek();
+        if (next != null && next != sub && next.evicting.compareAndSet(false, true)) {
+            log.debug("evicting idle member to free budget");
+            sub.pool.evictIdle();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sweeper.dispose();
+        for (SubPool<T> sub : pools.values()) {
+            sub.pool.close();
+        }
+        pools.clear();
+        starved.clear();
+    }
+
+    private static final class SubPool<T> implements MemberBudget {
+
+        private final KeyedPool<?, T> parent;
+        final NonBlockingPool<T> pool;
+
+        // the number of subscribers that have not yet finished, -1 if the sub-pool is
+        // being checked for dropping
+        final AtomicInteger subscribers = new AtomicInteger();
+
+        // true while queued for a permit
+        final AtomicBoolean starved = new AtomicBoolean();
+
+        // true while an idle member of another sub-pool is being released to free a
+        // permit for this sub-pool
+        final AtomicBoolean evicting = new AtomicBoolean();
+
+        // scheduler time in ms of the last subscription
+        volatile long lastUsed;
+
+        SubPool(KeyedPool<?, T> parent, NonBlockingPool.Builder<T> builder) {
+            this.parent = parent;
+            this.pool = builder //
+                    .budget(this) //
+                    .sweptExternally() //
+                    .build();
+        }
+
+        void finished() {
+            subscribers.decrementAndGet();
+        }
+
+        @Override
+        public boolean tryAcquire() {
+            return parent.tryAcquirePermit(this);
+        }
+
+        @Override
+        public void release() {
+            parent.releasePermit();
+        }
+
+        @Override
+        public void idle() {
+            parent.idle(this);
+        }
+    }
+
+    public static final class Builder<K, T> {
+
+        private final Function<? super K, ? extends T> factory;
+        private int maxSize = 10;
+        private int maxSizePerKey = 10;
+        private Predicate<? super T> healthCheck = NonBlockingPool.Builder.ALWAYS_TRUE;
+        private long idleTimeBeforeHealthCheckMs = 1000;
+        private Consumer<? super T> disposer = Consumers.doNothing();
+        private long maxIdleTimeMs;
+        private long createRetryIntervalMs = 30000;
+        private long sweepIntervalMs = 1000;
+        private Scheduler scheduler = Schedulers.computation();
+        // null means the same as scheduler
+        private Scheduler blockingScheduler;
+
+        Builder(Function<? super K, ? extends T> factory) {
+            Preconditions.checkNotNull(factory);
+            this.factory = factory;
+        }
+
+        /**
+         * Sets the maximum number of members across all keys.
+         *
+         * @param maxSize maximum number of members across all keys
+         * @return this
+         */
+        public Builder<K, T> maxSize(int maxSize) {
+            Preconditions.checkArgument(maxSize > 0);
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of members for any one key.
+         *
+         * @param maxSizePerKey maximum number of members for one key
+         * @return this
+         */
+        public Builder<K, T> maxSizePerKey(int maxSizePerKey) {
+            Preconditions.checkArgument(maxSizePerKey > 0);
+            this.maxSizePerKey = maxSizePerKey;
+            return this;
+        }
+
+        public Builder<K, T> healthCheck(Predicate<? super T> healthCheck) {
+            Preconditions.checkNotNull(healthCheck);
+            this.healthCheck = healthCheck;
+            return this;
+        }
+
+        public Builder<K, T> idleTimeBeforeHealthCheck(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            this.idleTimeBeforeHealthCheckMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder<K, T> disposer(Consumer<? super T> disposer) {
+            Preconditions.checkNotNull(disposer);
+            this.disposer = disposer;
+            return this;
+        }
+
+        public Builder<K, T> maxIdleTime(long value, TimeUnit unit) {
+            Preconditions.checkArgument(value >= 0);
+            this.maxIdleTimeMs = unit.toMillis(value);
+            return this;
+        }
+
+        public Builder<K, T> createRetryInterval(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            this.createRetryIntervalMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the interval between sweeps that release members idle for longer than
+         * maxIdleTime and drop the sub-pools of keys with no members. Default is 1s.
+         *
+         * @param duration interval between sweeps
+         * @param unit     unit of the duration
+         * @return this
+         */
+        public Builder<K, T> sweepInterval(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(unit.toMillis(duration) > 0, "sweepInterval must be at least 1ms");
+            this.sweepIntervalMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public Builder<K, T> scheduler(Scheduler scheduler) {
+            Preconditions.checkNotNull(scheduler);
+            this.scheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * See {@link NonBlockingPool.Builder#blockingScheduler(Scheduler)}.
+         *
+         * @param scheduler scheduler for blocking work
+         * @return this
+         */
+        public Builder<K, T> blockingScheduler(Scheduler scheduler) {
+            Preconditions.checkNotNull(scheduler);
+            this.blockingScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * See {@link NonBlockingPool.Builder#blockingOnVirtualThreads()}.
+         *
+         * @return this
+         * @throws UnsupportedOperationException if the runtime does not support
+         *                                       virtual threads
+         */
+        public Builder<K, T> blockingOnVirtualThreads() {
+            return blockingScheduler(VirtualThreads.scheduler());
+        }
+
+        private T create(K key) throws Exception {
+            try {
+                return factory.apply(key);
+            } catch (Exception | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        NonBlockingPool.Builder<T> subPoolBuilder(K key) {
+            return NonBlockingPool //
+                    .<T>factory(() -> create(key)) //
+                    .maxSize(maxSizePerKey) //
+                    .healthCheck(healthCheck) //
+                    .idleTimeBeforeHealthCheck(idleTimeBeforeHealthCheckMs, TimeUnit.MILLISECONDS) //
+                    .disposer(disposer) //
+                    .maxIdleTime(maxIdleTimeMs, TimeUnit.MILLISECONDS) //
+                    .createRetryInterval(createRetryIntervalMs, TimeUnit.MILLISECONDS) //
+                    .scheduler(scheduler) //
+                    .blockingScheduler(blockingScheduler == null ? scheduler : blockingScheduler);
+        }
+
+        public KeyedPool<K, T> build() {
+            Preconditions.checkArgument(maxSizePerKey <= maxSize, "maxSizePerKey must be <= maxSize");
+            return new KeyedPool<K, T>(this);
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package org.davidmoten.rxjava3.pool;
+
+/**
+ * Limits the number of member values that can exist across pools (for example
+ * the sub-pools of a {@link KeyedPool}). A permit is acquired before a value is
+ * created and released when the value is disposed.
+ */
+interface MemberBudget {
+
+    /**
+     * Returns true if a permit was acquired. If false is returned then the budget
+     * calls {@link NonBlockingPool#drainMembers()} on the pool when a permit may
+     * have become available.
+     * 
+     * @return true if and only if a permit was acquired
+     */
+    boolean tryAcquire();
+
+    void release();
+
+    /**
+     * Called by the pool's drain loop when it has idle members and nothing
+     * waiting so that the budget can ask the pool to release one (see
+     * {@link NonBlockingPool#evictIdle()}) for use elsewhere.
+     */
+    void idle();
+
+}
@@ -2,14 +2,19 @@ package org.davidmoten.rxjava3.pool;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.BiFunction;
 
-import org.davidmoten.rxjava3.pool.internal.LifoQueue;
+import org.davidmoten.rxjava3.pool.internal.IndexedLifoQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,7 +23,6 @@ import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
 
 import io.reactivex.rxjava3.annotations.NonNull;
 import io.reactivex.rxjava3.core.Scheduler;
-import io.reactivex.rxjava3.core.Scheduler.Worker;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.core.SingleObserver;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
@@ -34,49 +38,134 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
 
     private static final Logger log = LoggerFactory.getLogger(MemberSingle.class);
 
+    // the number of direct emissions in progress on the current thread (limited by
+    // pool.maxSubscribeEmitDepth for new subscribers and pool.maxDirectEmitDepth for
+    // waiting subscribers because a long-enough chain of checkout-checkins could
+    // otherwise provoke stack overflow)
+    private static final ThreadLocal<int[]> EMIT_DEPTH = ThreadLocal.withInitial(() -> new int[1]);
+
+    // idle members are released and expired waiters failed by a periodic sweep
+    // that runs this many times per maxIdleTime (or maxWaitTime if shorter) so a
+    // member may stay idle for up to 10% longer than maxIdleTime
+    private static final int SWEEPS_PER_PERIOD = 10;
+
+    // bulk health check result that counts every member as unhealthy
+    private static final boolean[] NONE_HEALTHY = new boolean[0];
+
     // sentinel object representing remove all observers that is added to
     // toBeRemoved queue
     private final MemberSingleObserver<T> removeAll;
 
-    private final LifoQueue<DecoratingMember<T>> initializedAvailable;
+    // indexes into members of initialized members that are available for checkout
+    private final IndexedLifoQueue initializedAvailable;
     private final SimplePlainQueue<DecoratingMember<T>> notInitialized;
     private final SimplePlainQueue<DecoratingMember<T>> toBeReleased;
+    // members past maxLifetime to be released and recreated
+    private final SimplePlainQueue<DecoratingMember<T>> toBeRotated;
     private final SimplePlainQueue<DecoratingMember<T>> toBeChecked;
     private final SimplePlainQueue<MemberSingleObserver<T>> toBeAdded;
     private final SimplePlainQueue<MemberSingleObserver<T>> toBeRemoved;
 
     private final AtomicInteger wip = new AtomicInteger();
+    // preallocated up to pool.maxSizeLimit, only the first activeSize members are
+    // used
     private final DecoratingMember<T>[] members;
     private final Scheduler scheduler;
-    private final long createRetryIntervalMs;
+    private final Scheduler blockingScheduler;
+
+    // parked[i] is true if members[i] is not initialized and not queued because
+    // i >= activeSize
+    // synchronized by `wip`
+    private final boolean[] parked;
+
+    // the value of pool.maxSize last applied by the drain loop
+    // synchronized by `wip`
+    private int activeSize;
+
+    // synchronized by `wip`
+    private Disposable sweeper;
+    private long sweepIntervalMs;
+    private Disposable sizeControlTicker;
+
+    // measurements for pool.sizeController since the last sample
+    // synchronized by `wip`
+    private int sampleCheckouts;
+    private int sampleWaits;
+    private long sampleWaitTimeTotalMs;
+    private long sampleWaitTimeMaxMs;
+    private long sampleStartTimeMs;
 
     // synchronized by `wip`
     private final CompositeDisposable scheduled = new CompositeDisposable();
 
     final NonBlockingPool<T> pool;
 
+    private final PoolMetrics metrics;
+
+    // if false then nothing is measured (avoids calls to System.nanoTime())
+    final boolean metricsEnabled;
+
+    private final boolean leakDetectionEnabled;
+
+    private final boolean backgroundHealthCheckEnabled;
+
+    // the number of background health checks in progress
+    private final AtomicInteger backgroundChecks = new AtomicInteger();
+
     private final AtomicLong initializeScheduled = new AtomicLong();
 
+    // the number of observers waiting (in toBeAdded or observers)
+    private final AtomicInteger pendingAcquires = new AtomicInteger();
+
     // mutable
     private volatile boolean cancelled;
 
+    // set by the periodic idle sweep task and cleared by the drain loop
+    private volatile boolean sweepRequested;
+
+    // set when the pool configuration changes and cleared by the drain loop
+    private volatile boolean reconfigureRequested;
+
+    // set by the periodic size control task and cleared by the drain loop
+    private volatile boolean sizeControlRequested;
+
+    // the number of idle members requested to be released by evictIdle()
+    private final AtomicInteger evictRequested = new AtomicInteger();
+
+    // the number of members released because of maxLifetime that should be
+    // recreated without waiting for demand
+    private final AtomicInteger recreateRequested = new AtomicInteger();
+
     MemberSingle(NonBlockingPool<T> pool) {
         Preconditions.checkNotNull(pool);
+        this.metrics = pool.metrics;
+        this.metricsEnabled = pool.metrics != PoolMetrics.NONE;
+        this.leakDetectionEnabled = pool.leakDetectionThresholdMs > 0;
+        this.backgroundHealthCheckEnabled = pool.backgroundHealthCheckIntervalMs > 0
+                && (pool.healthCheck != NonBlockingPool.Builder.ALWAYS_TRUE || pool.asyncHealthCheck != null
+                        || pool.bulkHealthCheck != null);
         this.notInitialized = new MpscLinkedQueue<>();
-        this.initializedAvailable = new LifoQueue<>();
+        this.initializedAvailable = new IndexedLifoQueue(pool.maxSizeLimit);
         this.toBeReleased = new MpscLinkedQueue<>();
+        this.toBeRotated = new MpscLinkedQueue<>();
         this.toBeChecked = new MpscLinkedQueue<>();
         this.toBeAdded = new MpscLinkedQueue<>();
         this.toBeRemoved = new MpscLinkedQueue<>();
-        this.members = createMembersArray(pool.maxSize, pool.checkinDecorator);
-        for (DecoratingMember<T> m : members) {
-            notInitialized.offer(m);
+        this.members = createMembersArray(pool.maxSizeLimit, pool.checkinDecorator);
+        this.parked = new boolean[members.length];
+        this.activeSize = pool.maxSize;
+        for (int i = 0; i < members.length; i++) {
+            if (i < activeSize) {
+                notInitialized.offer(members[i]);
+            } else {
+                parked[i] = true;
+            }
         }
         this.scheduler = pool.scheduler;
-        this.createRetryIntervalMs = pool.createRetryIntervalMs;
-        this.observers = new Observers<T>();
+        this.blockingScheduler = pool.blockingScheduler;
+        this.observers = new Observers<T>(pendingAcquires);
         this.pool = pool;
-        this.removeAll = new MemberSingleObserver<T>(EmptyComponent.INSTANCE, this);
+        this.removeAll = new MemberSingleObserver<T>(EmptyComponent.INSTANCE, this, 0);
     }
 
     private DecoratingMember<T>[] createMembersArray(int poolMaxSize,
@@ -84,24 +173,398 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
         @SuppressWarnings("unchecked")
         DecoratingMember<T>[] m = new DecoratingMember[poolMaxSize];
         for (int i = 0; i < m.length; i++) {
-            m[i] = new DecoratingMember<T>(null, checkinDecorator, this);
+            m[i] = new DecoratingMember<T>(null, checkinDecorator, this, i);
         }
         return m;
     }
 
+    /**
+     * Starts the periodic sweep that releases idle members and fails waiters that
+     * have waited longer than maxWaitTime (if maxIdleTime or maxWaitTime is set).
+     * Called once only, by the pool that owns this MemberSingle.
+     */
+    void start() {
+        reconfigure();
+    }
+
+    /**
+     * Applies the current configuration of the pool (maxSize and the sweep
+     * interval). Called by the pool after its configuration changes.
+     */
+    void reconfigure() {
+        reconfigureRequested = true;
+        drain();
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void applyConfiguration() {
+        int size = pool.maxSize;
+        log.debug("applying maxSize {}", size);
+        if (size < activeSize) {
+            for (int i = size; i < activeSize; i++) {
+                DecoratingMember<T> m = members[i];
+                // idle members are released now, members in use are released on checkin
+                if (initializedAvailable.contains(i) && !m.isReleasing() && !m.isChecking()) {
+                    toBeReleased.offer(m);
+                }
+            }
+        } else {
+            for (int i = activeSize; i < size; i++) {
+                if (parked[i]) {
+                    parked[i] = false;
+                    notInitialized.offer(members[i]);
+                }
+            }
+        }
+        activeSize = size;
+        long intervalMs = 0;
+        if (pool.maxIdleTimeMs > 0) {
+            intervalMs = Math.max(1, pool.maxIdleTimeMs / SWEEPS_PER_PERIOD);
+        }
+        if (pool.maxWaitTimeMs > 0) {
+            long ms = Math.max(1, pool.maxWaitTimeMs / SWEEPS_PER_PERIOD);
+            intervalMs = intervalMs == 0 ? ms : Math.min(intervalMs, ms);
+        }
+        if (pool.leakDetectionThresholdMs > 0) {
+            long ms = Math.max(1, pool.leakDetectionThresholdMs / SWEEPS_PER_PERIOD);
+            intervalMs = intervalMs == 0 ? ms : Math.min(intervalMs, ms);
+        }
+        if (pool.maxLifetimeMs > 0) {
+            long ms = Math.max(1, pool.maxLifetimeMs / SWEEPS_PER_PERIOD);
+            intervalMs = intervalMs == 0 ? ms : Math.min(intervalMs, ms);
+        }
+        if (backgroundHealthCheckEnabled) {
+            long ms = Math.max(1, pool.backgroundHealthCheckIntervalMs / SWEEPS_PER_PERIOD);
+            intervalMs = intervalMs == 0 ? ms : Math.min(intervalMs, ms);
+        }
+        if (pool.sizeController != null && sizeControlTicker == null && !pool.isClosed()) {
+            sizeControlTicker = scheduler.schedulePeriodicallyDirect(new SizeControlTicker(),
+                    pool.sizeControlIntervalMs, pool.sizeControlIntervalMs, TimeUnit.MILLISECONDS);
+            scheduled.add(sizeControlTicker);
+        }
+        if (pool.sweptExternally) {
+            intervalMs = 0;
+        }
+        if (intervalMs != sweepIntervalMs) {
+            if (sweeper != null) {
+                scheduled.remove(sweeper);
+                sweeper = null;
+            }
+            sweepIntervalMs = intervalMs;
+            if (intervalMs > 0 && !pool.isClosed()) {
+                sweeper = scheduler.schedulePeriodicallyDirect(new Sweeper(), intervalMs, intervalMs,
+                        TimeUnit.MILLISECONDS);
+                scheduled.add(sweeper);
+            }
+        }
+    }
+
+    void sweep() {
+        sweepRequested = true;
+        drain();
+    }
+
+    void evictIdle() {
+        evictRequested.incrementAndGet();
+        drain();
+    }
+
+    void drainMembers() {
+        drain();
+    }
+
+    boolean isEmpty() {
+        if (initializeScheduled.get() > 0 || pendingAcquires.get() > 0) {
+            return false;
+        }
+        for (DecoratingMember<T> m : members) {
+            if (m.isInitialized()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     @Override
     protected void subscribeActual(SingleObserver<? super Member<T>> observer) {
         log.debug("subscribeActual");
         // the action of checking out a member from the pool is implemented as a
         // subscription to the singleton MemberSingle
-        MemberSingleObserver<T> o = new MemberSingleObserver<T>(observer, this);
+        subscribeMember(observer, 0);
+    }
+
+    private void subscribeMember(SingleObserver<? super Member<T>> observer, int priority) {
+        MemberSingleObserver<T> o = new MemberSingleObserver<T>(observer, this, priority);
         observer.onSubscribe(o);
         if (pool.isClosed()) {
             observer.onError(new PoolClosedException());
             return;
         }
+        if (o.isDisposed()) {
+            return;
+        }
+        int[] depth = pool.maxSubscribeEmitDepth > 0 ? EMIT_DEPTH.get() : null;
+        // fast path: if nothing else is running the drain loop, nobody is waiting and
+        // an initialized member is available then hand it straight to the observer on
+        // this thread (unless disabled or we are already nested too deeply in
+        // emissions on this thread in which case take the slow path which jumps
+        // threads)
+        if (depth != null && depth[0] < pool.maxSubscribeEmitDepth && wip.compareAndSet(0, 1)) {
+            DecoratingMember<T> m = pollAvailableIfNoneWaiting();
+            if (m == null) {
+                if (tryAddWaiter(o)) {
+                    drainLoop(1);
+                } else {
+                    int missed = wip.decrementAndGet();
+                    if (missed != 0) {
+                        drainLoop(missed);
+                    }
+                    reject(o);
+                }
+            } else {
+                int missed = wip.decrementAndGet();
+                if (missed != 0) {
+                    drainLoop(missed);
+                }
+                emitDirect(o, m, depth);
+            }
+            return;
+        }
+        if (tryAddWaiter(o)) {
+            drain();
+        } else {
+            reject(o);
+        }
+    }
+
+    // adds the observer to the waiting observers unless maxPendingAcquires would
+    // be exceeded
+    private boolean tryAddWaiter(MemberSingleObserver<T> o) {
+        if (pendingAcquires.incrementAndGet() > pool.maxPendingAcquires) {
+            pendingAcquires.decrementAndGet();
+            return false;
+        }
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        o.arrivalTime = now;
+        // each unit of priority counts as having waited one aging interval longer so
+        // a waiter eventually overtakes later arrivals of any higher priority
+        o.key = now - o.priority * pool.priorityAgingIntervalMs;
+        if (pool.maxWaitTimeMs > 0) {
+            o.deadline = now + pool.maxWaitTimeMs;
+        }
         toBeAdded.offer(o);
+        return true;
+    }
+
+    private void reject(MemberSingleObserver<T> o) {
+        log.debug("rejecting observer because maxPendingAcquires reached");
+        if (o.getAndSet(null) != null) {
+            o.onError(new PoolExhaustedException(pool.maxPendingAcquires));
+        }
+    }
+
+    // subscribes the observer and emits to it on this thread only if an
+    // initialized member is immediately available and direct emissions are nested
+    // less than maxDepth deep on this thread, otherwise returns false without
+    // subscribing
+    boolean trySubscribeAvailable(SingleObserver<? super Member<T>> observer, int maxDepth) {
+        int[] depth = EMIT_DEPTH.get();
+        if (depth[0] >= maxDepth || !wip.compareAndSet(0, 1)) {
+            return false;
+        }
+        DecoratingMember<T> m = pollAvailableIfNoneWaiting();
+        int missed = wip.decrementAndGet();
+        if (missed != 0) {
+            drainLoop(missed);
+        }
+        if (m == null) {
+            return false;
+        }
+        MemberSingleObserver<T> o = new MemberSingleObserver<T>(observer, this, 0);
+        observer.onSubscribe(o);
+        emitDirect(o, m, depth);
+        return true;
+    }
+
+    Single<Member<T>> member(int priority) {
+        return new PrioritySingle(priority);
+    }
+
+    Member<T> acquire(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (pool.isClosed()) {
+            throw new PoolClosedException();
+        }
+        long startTime = metricsEnabled ? System.nanoTime() : 0;
+        // fast path: take an idle member on this thread if nobody is waiting
+        if (wip.compareAndSet(0, 1)) {
+            DecoratingMember<T> m = pollAvailableIfNoneWaiting();
+            int missed = wip.decrementAndGet();
+            if (missed != 0) {
+                drainLoop(missed);
+            }
+            if (m != null) {
+                if (metricsEnabled) {
+                    long now = System.nanoTime();
+                    metrics.recordWaitTime(now - startTime);
+                    m.markAsCheckedOut(now);
+                }
+                if (leakDetectionEnabled) {
+                    markAsCheckedOutForLeakDetection(m);
+                }
+                return m;
+            }
+        }
+        // slow path: wait with the other subscribers and park until emitted to
+        BlockingObserver<T> o = new BlockingObserver<T>(this);
+        if (!tryAddWaiter(o)) {
+            throw new PoolExhaustedException(pool.maxPendingAcquires);
+        }
         drain();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        boolean interrupted = false;
+        while (!o.isDone()) {
+            if (Thread.interrupted()) {
+                interrupted = true;
+                break;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        if (!o.isDone()) {
+            if (o.getAndSet(null) != null) {
+                // stop waiting
+                remove(o);
+                if (interrupted) {
+                    throw new InterruptedException();
+                } else {
+                    throw new TimeoutException("timed out waiting for a pool member after " + timeout + " " + unit);
+                }
+            }
+            // lost the race with an emission or error that is about to arrive
+            while (!o.isDone()) {
+                LockSupport.park(this);
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return o.result();
+    }
+
+    Single<List<Member<T>>> members(int n) {
+        return new BatchSingle(n);
+    }
+
+    private void subscribeBatch(SingleObserver<? super List<Member<T>>> observer, int n) {
+        log.debug("subscribeBatch {}", n);
+        BatchObserver<T> o = new BatchObserver<T>(observer, n, this);
+        observer.onSubscribe(o);
+        if (pool.isClosed()) {
+            observer.onError(new PoolClosedException());
+            return;
+        }
+        if (o.isDisposed()) {
+            return;
+        }
+        if (tryAddWaiter(o)) {
+            drain();
+        } else {
+            reject(o);
+        }
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private DecoratingMember<T> pollInitializedAvailable() {
+        while (true) {
+            int index = initializedAvailable.poll();
+            if (index == IndexedLifoQueue.NONE) {
+                return null;
+            }
+            DecoratingMember<T> m = members[index];
+            if (index < activeSize || m.isReleasing() || m.isChecking()) {
+                return m;
+            }
+            // retired by a reduction in maxSize
+            log.debug("releasing retired member {}", m);
+            m.markAsReleasing();
+            scheduled.add(blockingScheduler.scheduleDirect(new Releaser(m, false)));
+        }
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private DecoratingMember<T> pollNotInitialized() {
+        DecoratingMember<T> m;
+        while ((m = notInitialized.poll()) != null) {
+            if (m.index() < activeSize) {
+                return m;
+            }
+            // retired by a reduction in maxSize, not initialized again unless maxSize
+            // increases
+            parked[m.index()] = true;
+        }
+        return null;
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private DecoratingMember<T> pollAvailableIfNoneWaiting() {
+        if (cancelled || observers.readyCount > 0 || !toBeAdded.isEmpty()) {
+            return null;
+        }
+        DecoratingMember<T> m;
+        while ((m = pollInitializedAvailable()) != null) {
+            if (m.isReleasing() || m.isChecking()) {
+                // leave off the initializedAvailable queue because it is being
+                // released or checked
+                continue;
+            }
+            if (shouldPerformHealthCheck(m)) {
+                // put it back for the drain loop to queue for health check
+                initializedAvailable.offer(m.index());
+                return null;
+            }
+            // no wait
+            sampleCheckouts++;
+            return m;
+        }
+        return null;
+    }
+
+    private void emitDirect(MemberSingleObserver<T> o, DecoratingMember<T> m, int[] depth) {
+        log.debug("emitting directly {}", m);
+        depth[0]++;
+        try {
+            emitNow(o, m);
+        } finally {
+            depth[0]--;
+        }
+    }
+
+    // emits to the observer on the current thread unless the observer has been
+    // disposed in which case the member is returned to the pool
+    private void emitNow(MemberSingleObserver<T> o, DecoratingMember<T> m) {
+        // clearing the parent means a later dispose of the observer is a no-op
+        if (o.getAndSet(null) == null) {
+            log.debug("observer disposed before emission, returning {}", m);
+            initializedAvailable.offer(m.index());
+            drain();
+            return;
+        }
+        if (metricsEnabled) {
+            long now = System.nanoTime();
+            metrics.recordWaitTime(now - o.subscribeTime);
+            m.markAsCheckedOut(now);
+        }
+        if (leakDetectionEnabled) {
+            markAsCheckedOutForLeakDetection(m);
+        }
+        try {
+            o.onSuccess(m);
+        } catch (Throwable e) {
+            RxJavaPlugins.onError(e);
+        }
     }
 
     public void checkin(Member<T> member) {
@@ -111,20 +574,93 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
     public void checkin(Member<T> member, boolean decrementInitializeScheduled) {
         log.debug("checking in {}", member);
         DecoratingMember<T> d = (DecoratingMember<T>) member;
-        d.scheduleRelease();
-        d.markAsChecked();
-        initializedAvailable.offer((DecoratingMember<T>) member);
         if (decrementInitializeScheduled) {
+            // newly created, not checked out
+            addToAvailable(d);
             initializeScheduled.decrementAndGet();
+        } else {
+            if (leakDetectionEnabled && !d.tryCheckinForLeakDetection()) {
+                log.warn("ignoring checkin of a member that was reclaimed by leak detection (or checked in twice)");
+                return;
+            }
+            recordHoldTime(d);
+            addToAvailable(d);
+        }
+        if (decrementInitializeScheduled) {
+            drainAfterBlockingWork();
+        } else {
+            drain();
         }
-        drain();
     }
 
-    public void addToBeReleased(DecoratingMember<T> member) {
-        toBeReleased.offer(member);
+    public void checkinAll(Collection<? extends Member<T>> members) {
+        log.debug("checking in {} members", members.size());
+        for (Member<T> member : members) {
+            DecoratingMember<T> d = (DecoratingMember<T>) member;
+            if (leakDetectionEnabled && !d.tryCheckinForLeakDetection()) {
+                log.warn("ignoring checkin of a member that was reclaimed by leak detection (or checked in twice)");
+                continue;
+            }
+            recordHoldTime(d);
+            addToAvailable(d);
+        }
+        // a single drain for all the members
         drain();
     }
 
+    private void addToAvailable(DecoratingMember<T> d) {
+        if (d.index() >= pool.maxSize) {
+            // retired by a reduction in maxSize
+            toBeReleased.offer(d);
+            return;
+        }
+        if (pool.maxLifetimeMs > 0 && d.isLifetimeExpired(scheduler.now(TimeUnit.MILLISECONDS))) {
+            log.debug("member past maxLifetime, queueing for recreation {}", d);
+            toBeRotated.offer(d);
+            return;
+        }
+        // no scheduler work here, idle release is handled by the periodic sweep
+        d.markAsCheckedIn();
+        initializedAvailable.offer(d.index());
+    }
+
+    private void recordHoldTime(DecoratingMember<T> d) {
+        if (metricsEnabled) {
+            metrics.recordHoldTime(System.nanoTime() - d.checkoutTime());
+        }
+    }
+
+    int inUseCount() {
+        int count = 0;
+        for (DecoratingMember<T> m : members) {
+            if (m.isInitialized() && !m.isReleasing() && !m.isChecking()
+                    && !initializedAvailable.contains(m.index())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int idleCount() {
+        int count = 0;
+        for (DecoratingMember<T> m : members) {
+            if (m.isInitialized() && !m.isReleasing() && !m.isChecking()
+                    && initializedAvailable.contains(m.index())) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int initializingCount() {
+        return (int) initializeScheduled.get();
+    }
+
+    int waitingCount() {
+        // racy read is fine for a gauge
+        return observers.readyCount;
+    }
+
     public void cancel() {
         log.debug("cancel called");
         this.cancelled = true;
@@ -134,80 +670,273 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
     private void drain() {
         log.debug("drain called");
         if (wip.getAndIncrement() == 0) {
-            log.debug("drain loop starting");
-            int missed = 1;
-            while (true) {
-                // we add observers or schedule release of members even if no requests exist
-                removeObservers();
-                addObservers();
+            drainLoop(1);
+        }
+    }
 
-                scheduleReleasesNoDelay();
-                scheduleChecksNoDelay();
-
-                Observers<T> obs = observers;
-                log.debug("requested={}", obs.requested);
-                // max we can emit is the number of active (available) resources in pool
-                long r = Math.min(obs.readyCount, obs.requested);
-                long e = 0; // emitted
-                while (e != r && obs.readyCount > 0) {
-                    if (cancelled) {
-                        disposeAll();
-                        return;
-                    }
-                    // check for an already initialized available member
-                    final DecoratingMember<T> m = initializedAvailable.poll();
-                    log.debug("poll of available members returns {}", m);
-                    if (m == null) {
-                        // no members available, check for a released member (that needs to be
-                        // reinitialized before use)
-                        final DecoratingMember<T> m2 = notInitialized.poll();
-                        if (m2 == null) {
+    // drains after work on the blocking scheduler (creation, health check or
+    // release). If that is a separate scheduler then nothing is emitted directly
+    // so that subscribers are not emitted to on a blocking (possibly virtual)
+    // thread
+    private void drainAfterBlockingWork() {
+        log.debug("drain called after blocking work");
+        if (wip.getAndIncrement() == 0) {
+            drainLoop(1, blockingScheduler == scheduler);
+        }
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void drainLoop(int missed) {
+        drainLoop(missed, true);
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void drainLoop(int missed, boolean directEmitAllowed) {
+        log.debug("drain loop starting");
+        // at most one member per drain loop is emitted directly on this thread (once
+        // the loop has finished) and only if permitted by maxDirectEmitDepth
+        MemberSingleObserver<T> directObserver = null;
+        DecoratingMember<T> directMember = null;
+        int[] depth = directEmitAllowed && pool.maxDirectEmitDepth > 0 ? EMIT_DEPTH.get() : null;
+        while (true) {
+            // we add observers or schedule release of members even if no requests exist
+            removeObservers();
+            addObservers();
+
+            if (reconfigureRequested) {
+                reconfigureRequested = false;
+                applyConfiguration();
+            }
+            if (sizeControlRequested) {
+                sizeControlRequested = false;
+                controlSize();
+            }
+            if (evictRequested.get() > 0) {
+                queueIdleMembersForEviction();
+            }
+            boolean sweep = sweepRequested;
+            if (sweep) {
+                sweepRequested = false;
+                queueIdleMembersForRelease();
+                if (leakDetectionEnabled) {
+                    detectLeaks();
+                }
+            }
+            scheduleReleasesNoDelay();
+            scheduleChecksNoDelay();
+            if (sweep && backgroundHealthCheckEnabled) {
+                // after scheduling releases so that members being released are not checked
+                scheduleBackgroundChecks();
+            }
+            if (recreateRequested.get() > 0) {
+                scheduleRecreations();
+            }
+
+            Observers<T> obs = observers;
+            failExpiredWaiters(obs, sweep);
+            log.debug("readyCount={}, demand={}", obs.readyCount, obs.demand);
+            // max we can emit is the number of active (available) resources in pool
+            long r = obs.demand;
+            long e = 0; // emitted
+            while (e != r && obs.readyCount > 0) {
+                if (cancelled) {
+                    disposeAll();
+                    return;
+                }
+                // check for an already initialized available member
+                final DecoratingMember<T> m = pollInitializedAvailable();
+                log.debug("poll of available members returns {}", m);
+                if (m == null) {
+                    // no members available, check for a released member (that needs to be
+                    // reinitialized before use)
+                    final DecoratingMember<T> m2 = pollNotInitialized();
+                    if (m2 == null) {
+                        break;
+                    } else {
+                        // only schedule member initialization if there is enough demand,
+                        boolean used = trySchedulingInitializationNoDelay(r, e, m2);
+                        if (!used) {
                             break;
-                        } else {
-                            // only schedule member initialization if there is enough demand,
-                            boolean used = trySchedulingInitializationNoDelay(r, e, m2);
-                            if (!used) {
-                                break;
-                            }
                         }
-                    } else if (!m.isReleasing() && !m.isChecking()) {
-                        log.debug("trying to emit member");
-                        if (shouldPerformHealthCheck(m)) {
-                            log.debug("queueing member for health check {}", m);
-                            toBeChecked.offer(m);
+                    }
+                } else if (!m.isReleasing() && !m.isChecking()) {
+                    log.debug("trying to emit member");
+                    if (shouldPerformHealthCheck(m)) {
+                        log.debug("queueing member for health check {}", m);
+                        toBeChecked.offer(m);
+                    } else {
+                        log.debug("no health check required for {}", m);
+                        MemberSingleObserver<T> next = obs.peek();
+                        if (next instanceof BatchObserver) {
+                            // only the next batch observer to be served gathers members so
+                            // that batch observers cannot deadlock each other
+                            BatchObserver<T> b = (BatchObserver<T>) next;
+                            b.gathered.add(m);
+                            obs.demand--;
+                            if (b.gathered.size() == b.size) {
+                                obs.poll();
+                                recordWait(b, b.size);
+                                emitBatch(b);
+                                log.debug("emitted batch");
+                            }
                         } else {
-                            log.debug("no health check required for {}", m);
-                            // this should not block because it just schedules emissions to observers
-                            emit(obs, m);
-                            log.debug("emitted");
-                            e++;
+                            MemberSingleObserver<T> o = obs.poll();
+                            recordWait(o, 1);
+                            if (directObserver == null && depth != null
+                                    && depth[0] < pool.maxDirectEmitDepth) {
+                                directObserver = o;
+                                directMember = m;
+                            } else {
+                                // this should not block because it just schedules emissions to
+                                // observers
+                                emit(o, m);
+                                log.debug("emitted");
+                            }
                         }
+                        e++;
                     }
-                    // else otherwise leave off the initializedAvailable queue because it is being
-                    // released or checked
-
-                    removeObservers();
-                    addObservers();
-                    
-                    // schedule release immediately of any member
-                    // queued for releasing
-                    scheduleReleasesNoDelay();
-                    
-                    // schedule check of any member queued for checking
+                }
+                // else otherwise leave off the initializedAvailable queue because it is being
+                // released or checked
+
+                removeObservers();
+                addObservers();
+                
+                // schedule release immediately of any member
+                // queued for releasing
+                scheduleReleasesNoDelay();
+                
+                // schedule check of any member queued for checking (a bulk health
+                // check waits for the end of the pass so that the members are checked
+                // together)
+                if (pool.bulkHealthCheck == null) {
                     scheduleChecksNoDelay();
                 }
-                missed = wip.addAndGet(-missed);
-                if (missed == 0) {
-                    return;
+            }
+            scheduleChecksNoDelay();
+            if (obs.readyCount == 0 && (pool.budget != null || pool.idleListener != null)
+                    && !initializedAvailable.isEmpty()) {
+                if (pool.budget != null) {
+                    pool.budget.idle();
+                }
+                Runnable idleListener = pool.idleListener;
+                if (idleListener != null) {
+                    idleListener.run();
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                if (directObserver != null) {
+                    emitDirect(directObserver, directMember, depth);
                 }
+                return;
             }
         }
     }
 
+    // must only be called by the thread that moved wip from 0
+    private void recordWait(MemberSingleObserver<T> o, int count) {
+        sampleCheckouts += count;
+        if (pool.sizeController != null) {
+            recordSampleWait(o, scheduler.now(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void recordSampleWait(MemberSingleObserver<T> o, long now) {
+        // only the wait since the start of the current sample counts, any earlier
+        // wait was counted in the sample of the period it happened in
+        long waitMs = now - Math.max(o.arrivalTime, sampleStartTimeMs);
+        sampleWaits++;
+        sampleWaitTimeTotalMs += waitMs;
+        sampleWaitTimeMaxMs = Math.max(sampleWaitTimeMaxMs, waitMs);
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void controlSize() {
+        int minSize = Math.max(1, pool.minIdle);
+        int maxSize = pool.maxSizeLimit;
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        // subscribers still waiting have waited during this sample too
+        for (MemberSingleObserver<T> o = observers.head; o != null; o = o.next) {
+            recordSampleWait(o, now);
+        }
+        for (int i = 0; i < observers.heapSize; i++) {
+            recordSampleWait(observers.heap[i], now);
+        }
+        SizeController.Sample sample = new SizeController.Sample(activeSize, minSize, maxSize, inUseCount(),
+                observers.readyCount, sampleCheckouts,
+                sampleWaits == 0 ? 0 : sampleWaitTimeTotalMs / sampleWaits, sampleWaitTimeMaxMs);
+        sampleCheckouts = 0;
+        sampleWaits = 0;
+        sampleWaitTimeTotalMs = 0;
+        sampleWaitTimeMaxMs = 0;
+        sampleStartTimeMs = now;
+        int size;
+        try {
+            size = pool.sizeController.size(sample);
+        } catch (Throwable e) {
+            RxJavaPlugins.onError(e);
+            return;
+        }
+        size = Math.max(minSize, Math.min(maxSize, size));
+        if (size != activeSize) {
+            log.debug("size controller changing maxSize from {} to {}, {}", activeSize, size, sample);
+            pool.maxSize = size;
+            applyConfiguration();
+        }
+    }
+
     private void addObservers() {
         MemberSingleObserver<T> o;
         while ((o = toBeAdded.poll()) != null) {
-            observers.add(o);
+            if (o.isDisposed()) {
+                // don't wait on behalf of an observer that has already gone
+                pendingAcquires.decrementAndGet();
+            } else {
+                observers.add(o);
+            }
+        }
+    }
+
+    private void failExpiredWaiters(Observers<T> obs, boolean sweep) {
+        if (pool.maxWaitTimeMs > 0 && obs.readyCount > 0) {
+            long now = scheduler.now(TimeUnit.MILLISECONDS);
+            // the list of default priority observers is in order of arrival so only
+            // need to check from the head
+            MemberSingleObserver<T> o;
+            while ((o = obs.head) != null && o.deadline <= now) {
+                failExpired(obs, o);
+            }
+            // prioritized observers are not in deadline order so are only checked on a
+            // sweep
+            if (sweep && obs.heapSize > 0) {
+                List<MemberSingleObserver<T>> expired = null;
+                for (int i = 0; i < obs.heapSize; i++) {
+                    if (obs.heap[i].deadline <= now) {
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(obs.heap[i]);
+                    }
+                }
+                if (expired != null) {
+                    for (MemberSingleObserver<T> x : expired) {
+                        failExpired(obs, x);
+                    }
+                }
+            }
+        }
+    }
+
+    private void failExpired(Observers<T> obs, MemberSingleObserver<T> o) {
+        log.debug("failing observer that has waited longer than maxWaitTime");
+        obs.remove(o);
+        if (o instanceof BatchObserver) {
+            returnGathered((BatchObserver<T>) o);
+        }
+        if (o.getAndSet(null) != null) {
+            o.onError(new TimeoutException("timed out waiting for a pool member after " + pool.maxWaitTimeMs + "ms"));
         }
     }
 
@@ -217,20 +946,35 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
             if (o == removeAll) {
                 observers.removeAll();
                 return;
-            } else {
-                observers.remove(o);
+            } else if (observers.remove(o) && o instanceof BatchObserver) {
+                returnGathered((BatchObserver<T>) o);
             }
         }
     }
 
+    private void returnGathered(BatchObserver<T> o) {
+        for (Member<T> m : o.gathered) {
+            log.debug("returning gathered member of disposed batch {}", m);
+            initializedAvailable.offer(((DecoratingMember<T>) m).index());
+        }
+        o.gathered.clear();
+    }
+
     private boolean trySchedulingInitializationNoDelay(long r, long e, final DecoratingMember<T> m) {
         // check initializeScheduled using a CAS loop
         while (true) {
             long cs = initializeScheduled.get();
             if (e + cs < r) {
                 if (initializeScheduled.compareAndSet(cs, cs + 1)) {
+                    if (!tryAcquireBudget()) {
+                        log.debug("no budget to initialize {}", m);
+                        // the budget drains again when a permit may be available
+                        initializeScheduled.decrementAndGet();
+                        notInitialized.offer(m);
+                        return false;
+                    }
                     log.debug("scheduling member creation");
-                    scheduled.add(scheduler.scheduleDirect(new Initializer(m)));
+                    scheduled.add(blockingScheduler.scheduleDirect(new Initializer(m)));
                     return true;
                 }
             } else {
@@ -242,27 +986,204 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
         }
     }
 
-    private boolean shouldPerformHealthCheck(final DecoratingMember<T> m) {
+    private boolean shouldPerformHealthCheck(final DecoratingMember<T> m) {
+        if (pool.idleTimeBeforeHealthCheckMs <= 0) {
+            // avoid the call to scheduler.now()
+            return false;
+        }
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        log.debug("schedule.now={}, lastCheck={}", now, m.lastCheckTime());
+        return shouldPerformHealthCheck(m, pool.idleTimeBeforeHealthCheckMs, now);
+    }
+
+    @VisibleForTesting
+    static <T> boolean shouldPerformHealthCheck(DecoratingMember<T> m, long idleTimeBeforeHealthCheckMs, long now) {
+        return idleTimeBeforeHealthCheckMs > 0 && now - m.lastCheckTime() >= idleTimeBeforeHealthCheckMs;
+    }
+
+    private void scheduleChecksNoDelay() {
+        List<DecoratingMember<T>> batch = null;
+        DecoratingMember<T> m;
+        while ((m = toBeChecked.poll()) != null) {
+            if (!m.isReleasing()) {
+                log.debug("scheduling check of {}", m);
+                // we mark as checking so that we can ignore it if already in the
+                // initializedAvailable queue after concurrent checkin
+                m.markAsChecking();
+                if (pool.bulkHealthCheck == null) {
+                    scheduled.add(blockingScheduler.scheduleDirect(new Checker(m, false)));
+                } else {
+                    if (batch == null) {
+                        batch = new ArrayList<>();
+                    }
+                    batch.add(m);
+                }
+            }
+        }
+        if (batch != null) {
+            scheduled.add(blockingScheduler.scheduleDirect(new BulkChecker(batch, false)));
+        }
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void scheduleBackgroundChecks() {
+        int available = pool.maxConcurrentBackgroundHealthChecks - backgroundChecks.get();
+        if (available <= 0) {
+            return;
+        }
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        // with a bulk health check all due members are checked in one call which
+        // counts as one check towards the concurrency limit
+        List<DecoratingMember<T>> batch = null;
+        for (DecoratingMember<T> m : members) {
+            if (initializedAvailable.contains(m.index()) && !m.isReleasing() && !m.isChecking()
+                    && m.isBackgroundCheckDue(now)) {
+                log.debug("scheduling background check of {}", m);
+                // left on the initializedAvailable queue, checkouts skip it while
+                // checking
+                m.markAsChecking();
+                if (pool.bulkHealthCheck == null) {
+                    backgroundChecks.incrementAndGet();
+                    scheduled.add(blockingScheduler.scheduleDirect(new Checker(m, true)));
+                    if (--available == 0) {
+                        return;
+                    }
+                } else {
+                    if (batch == null) {
+                        batch = new ArrayList<>();
+                    }
+                    batch.add(m);
+                }
+            }
+        }
+        if (batch != null) {
+            backgroundChecks.incrementAndGet();
+            scheduled.add(blockingScheduler.scheduleDirect(new BulkChecker(batch, true)));
+        }
+    }
+
+    private void queueIdleMembersForRelease() {
+        long now = scheduler.now(TimeUnit.MILLISECONDS);
+        if (pool.maxLifetimeMs > 0) {
+            for (DecoratingMember<T> m : members) {
+                if (initializedAvailable.contains(m.index()) && !m.isReleasing() && !m.isChecking()
+                        && m.isLifetimeExpired(now)) {
+                    log.debug("idle member past maxLifetime, queueing for recreation {}", m);
+                    // marked now so that it is not also released as idle below
+                    m.markAsReleasing();
+                    toBeRotated.offer(m);
+                }
+            }
+        }
+        int initialized = 0;
+        for (DecoratingMember<T> m : members) {
+            if (m.isInitialized() && !m.isReleasing()) {
+                initialized++;
+            }
+        }
+        // the sweep may be running for another feature after maxIdleTime has been
+        // reconfigured to 0 (no idle release)
+        long maxIdleTimeMs = pool.maxIdleTimeMs;
+        for (DecoratingMember<T> m : members) {
+            if (maxIdleTimeMs <= 0 || initialized <= pool.minIdle) {
+                // keep at least minIdle initialized members
+                break;
+            }
+            // lastCheckinTime is not cleared on checkout so only members on the
+            // available queue are idle
+            if (initializedAvailable.contains(m.index()) && !m.isReleasing() && !m.isChecking()
+                    && m.isIdleExpired(now, maxIdleTimeMs)) {
+                log.debug("queueing idle member for release {}", m);
+                toBeReleased.offer(m);
+                initialized--;
+            }
+        }
+        scheduleInitializationsUpToMinIdle(initialized);
+    }
+
+    private void markAsCheckedOutForLeakDetection(DecoratingMember<T> m) {
+        int n = pool.leakStackTraceSampling;
+        Throwable trace = n > 0 && ThreadLocalRandom.current().nextInt(n) == 0
+                ? new Throwable("pool member checked out here")
+                : null;
+        m.markAsCheckedOutForLeakDetection(scheduler.now(TimeUnit.MILLISECONDS), trace);
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void detectLeaks() {
         long now = scheduler.now(TimeUnit.MILLISECONDS);
-        log.debug("schedule.now={}, lastCheck={}", now, m.lastCheckTime());
-        return shouldPerformHealthCheck(m, pool.idleTimeBeforeHealthCheckMs, now);
+        long threshold = pool.leakDetectionThresholdMs;
+        for (int i = 0; i < members.length; i++) {
+            DecoratingMember<T> m = members[i];
+            if (m.isLeakToReport(now, threshold)) {
+                metrics.recordLeak();
+                Throwable trace = m.reportLeak();
+                if (trace == null) {
+                    log.warn("pool member checked out for longer than {}ms, possible leak (checkout stack trace "
+                            + "not sampled)", threshold);
+                } else {
+                    log.warn("pool member checked out for longer than {}ms, possible leak", threshold, trace);
+                }
+                if (pool.reclaimLeakedMembers && m.tryCheckinForLeakDetection()) {
+                    reclaim(m);
+                }
+            }
+        }
     }
 
-    @VisibleForTesting
-    static <T> boolean shouldPerformHealthCheck(DecoratingMember<T> m, long idleTimeBeforeHealthCheckMs, long now) {
-        return idleTimeBeforeHealthCheckMs > 0 && now - m.lastCheckTime() >= idleTimeBeforeHealthCheckMs;
+    // must only be called by the thread that moved wip from 0
+    private void reclaim(DecoratingMember<T> m) {
+        log.debug("reclaiming leaked member {}", m);
+        // the leaked member is replaced so that a late checkin of it cannot affect
+        // the replacement
+        int i = m.index();
+        DecoratingMember<T> replacement = new DecoratingMember<T>(null, pool.checkinDecorator, this, i);
+        members[i] = replacement;
+        metrics.recordRelease();
+        scheduled.add(blockingScheduler.scheduleDirect(() -> m.disposeValue()));
+        if (i < activeSize) {
+            notInitialized.offer(replacement);
+        } else {
+            parked[i] = true;
+        }
     }
 
-    private void scheduleChecksNoDelay() {
-        DecoratingMember<T> m;
-        while ((m = toBeChecked.poll()) != null) {
-            if (!m.isReleasing()) {
-                log.debug("scheduling check of {}", m);
-                // we mark as checking so that we can ignore it if already in the
-                // initializedAvailable queue after concurrent checkin
-                m.markAsChecking();
-                scheduled.add(scheduler.scheduleDirect(new Checker(m)));
+    private void queueIdleMembersForEviction() {
+        int n = evictRequested.getAndSet(0);
+        while (n > 0) {
+            DecoratingMember<T> m = pollInitializedAvailable();
+            if (m == null) {
+                // nothing idle to evict
+                return;
+            }
+            if (!m.isReleasing() && !m.isChecking()) {
+                log.debug("queueing idle member for eviction {}", m);
+                toBeReleased.offer(m);
+                n--;
+            }
+        }
+    }
+
+    private boolean tryAcquireBudget() {
+        MemberBudget budget = pool.budget;
+        return budget == null || budget.tryAcquire();
+    }
+
+    private void scheduleInitializationsUpToMinIdle(int initialized) {
+        long count = initialized + initializeScheduled.get();
+        while (count < pool.minIdle) {
+            DecoratingMember<T> m = pollNotInitialized();
+            if (m == null) {
+                return;
+            }
+            if (!tryAcquireBudget()) {
+                notInitialized.offer(m);
+                return;
             }
+            log.debug("scheduling member creation to maintain minIdle");
+            initializeScheduled.incrementAndGet();
+            scheduled.add(blockingScheduler.scheduleDirect(new Initializer(m)));
+            count++;
         }
     }
 
@@ -273,33 +1194,79 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
             // we mark as releasing so that we can ignore it if already in the
             // initializedAvailable queue after concurrent checkin
             m.markAsReleasing();
-            scheduled.add(scheduler.scheduleDirect(new Releaser(m)));
+            scheduled.add(blockingScheduler.scheduleDirect(new Releaser(m, false)));
+        }
+        while ((m = toBeRotated.poll()) != null) {
+            log.debug("scheduling release and recreation of {}", m);
+            m.markAsReleasing();
+            scheduled.add(blockingScheduler.scheduleDirect(new Releaser(m, true)));
+        }
+    }
+
+    // must only be called by the thread that moved wip from 0
+    private void scheduleRecreations() {
+        int n = recreateRequested.getAndSet(0);
+        while (n > 0) {
+            DecoratingMember<T> m = pollNotInitialized();
+            if (m == null) {
+                return;
+            }
+            if (!tryAcquireBudget()) {
+                notInitialized.offer(m);
+                return;
+            }
+            log.debug("scheduling recreation of member past maxLifetime {}", m);
+            initializeScheduled.incrementAndGet();
+            scheduled.add(blockingScheduler.scheduleDirect(new Initializer(m)));
+            n--;
         }
     }
 
-    private void emit(Observers<T> obs, DecoratingMember<T> m) {
-        // note that tryEmit is protected by the drain method so will
+    private void emit(MemberSingleObserver<T> o, DecoratingMember<T> m) {
+        if (o instanceof BlockingObserver) {
+            // only unparks the waiting thread so no need to jump threads
+            emitNow(o, m);
+            return;
+        }
+        // note that emit is protected by the drain method so will
         // not be run concurrently.
-        // advance counter to the next and choose an Observer to emit to (round robin)
 
-        // a precondition of this method is that obs.activeCount > 0 (enforced by drain
-        // method)
+        // emit on the scheduler so we jump threads to break the stack-trace (a
+        // long-enough chain of checkout-checkins could otherwise provoke stack
+        // overflow). scheduleDirect is used rather than a fresh Worker per emission
+        // to avoid allocating the worker and its disposables
+        scheduler.scheduleDirect(new Emitter(o, m));
+    }
+
+    private void emitBatch(BatchObserver<T> o) {
+        // emit on the scheduler for the same reason as emit
+        scheduler.scheduleDirect(new BatchEmitter(o));
+    }
 
-        int index = obs.index;
-        int nextIndex = (index + 1) % observers.ready.size();
-        while (nextIndex != index && !observers.ready.get(nextIndex)) {
-            nextIndex = (nextIndex + 1) % observers.ready.size();
+    private void emitBatchNow(BatchObserver<T> o) {
+        if (o.getAndSet(null) == null) {
+            log.debug("batch observer disposed before emission, returning members");
+            returnGathered(o);
+            drain();
+            return;
+        }
+        if (metricsEnabled) {
+            long now = System.nanoTime();
+            metrics.recordWaitTime(now - o.subscribeTime);
+            for (Member<T> m : o.gathered) {
+                ((DecoratingMember<T>) m).markAsCheckedOut(now);
+            }
+        }
+        if (leakDetectionEnabled) {
+            for (Member<T> m : o.gathered) {
+                markAsCheckedOutForLeakDetection((DecoratingMember<T>) m);
+            }
+        }
+        try {
+            o.batchChild.onSuccess(o.gathered);
+        } catch (Throwable e) {
+            RxJavaPlugins.onError(e);
         }
-        observers.ready.set(nextIndex, Boolean.FALSE);
-        observers.readyCount--;
-        observers.requested--;
-        MemberSingleObserver<T> oNext = obs.observers.get(nextIndex);
-        // get a fresh worker each time so we jump threads to
-        // break the stack-trace (a long-enough chain of
-        // checkout-checkins could otherwise provoke stack
-        // overflow)
-        Worker worker = scheduler.createWorker();
-        worker.schedule(new Emitter<T>(worker, oNext, m));
     }
 
     @VisibleForTesting
@@ -307,45 +1274,124 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
 
         private final DecoratingMember<T> m;
 
+        // time of the current attempt to create a value, only set if metrics enabled
+        private long startTime;
+
         Initializer(DecoratingMember<T> m) {
             this.m = m;
         }
 
         @Override
         public void run() {
-            if (!cancelled) {
+            if (cancelled) {
+                // the value will not be created so return its permit
+                MemberBudget budget = pool.budget;
+                if (budget != null) {
+                    budget.release();
+                }
+            } else {
+                if (metricsEnabled) {
+                    startTime = System.nanoTime();
+                }
+                if (pool.asyncFactory != null) {
+                    createAsync();
+                    return;
+                }
                 try {
                     log.debug("creating value");
                     // this action might block so is scheduled
                     T value = pool.factory.call();
-                    m.setValueAndClearReleasingFlag(value);
-                    checkin(m, true);
+                    onCreated(value);
                 } catch (Throwable t) {
-                    RxJavaPlugins.onError(t);
-                    // check cancelled again because factory.call() is user specified and could have
-                    // taken a significant time to complete
-                    if (!cancelled) {
-                        // schedule a retry
-                        scheduled.add(scheduler.scheduleDirect(this, createRetryIntervalMs, TimeUnit.MILLISECONDS));
-                    }
+                    onCreateError(t);
                 }
             }
         }
+
+        private void createAsync() {
+            log.debug("creating value asynchronously");
+            Single<? extends T> single;
+            try {
+                single = Preconditions.checkNotNull(pool.asyncFactory.get(), "asyncFactory returned null");
+            } catch (Throwable t) {
+                onCreateError(t);
+                return;
+            }
+            // no thread is held while creation is pending
+            scheduled.add(single.subscribe(this::onCreated, this::onCreateError));
+        }
+
+        private void onCreated(T value) {
+            if (metricsEnabled) {
+                metrics.recordCreateTime(System.nanoTime() - startTime);
+            }
+            m.setValueAndClearReleasingFlag(value);
+            checkin(m, true);
+        }
+
+        private void onCreateError(Throwable t) {
+            if (metricsEnabled) {
+                metrics.recordCreateFailure();
+            }
+            RxJavaPlugins.onError(t);
+            // check cancelled again because factory.call() is user specified and could have
+            // taken a significant time to complete
+            if (!cancelled) {
+                // schedule a retry
+                scheduled.add(
+                        blockingScheduler.scheduleDirect(this, pool.createRetryIntervalMs, TimeUnit.MILLISECONDS));
+            } else if (pool.budget != null) {
+                pool.budget.release();
+            }
+        }
+    }
+
+    final class Sweeper implements Runnable {
+
+        @Override
+        public void run() {
+            // the sweep itself happens in the drain loop so that it is serialized with
+            // the other operations on members
+            sweepRequested = true;
+            drain();
+        }
+    }
+
+    final class SizeControlTicker implements Runnable {
+
+        @Override
+        public void run() {
+            // the size is controlled in the drain loop so that it is serialized with
+            // the other operations on members
+            sizeControlRequested = true;
+            drain();
+        }
     }
 
     final class Releaser implements Runnable {
 
-        private DecoratingMember<T> m;
+        private final DecoratingMember<T> m;
+
+        // true if the member should be recreated without waiting for demand
+        private final boolean recreate;
 
-        Releaser(DecoratingMember<T> m) {
+        Releaser(DecoratingMember<T> m, boolean recreate) {
             this.m = m;
+            this.recreate = recreate;
         }
 
         @Override
         public void run() {
             try {
-                m.disposeValue();
-                release(m);
+                metrics.recordRelease();
+                m.disposeValue(() -> {
+                    if (recreate) {
+                        recreateRequested.incrementAndGet();
+                    }
+                    log.debug("adding released member to notInitialized queue {}", m);
+                    notInitialized.offer(m);
+                    drainAfterBlockingWork();
+                });
             } catch (Throwable t) {
                 RxJavaPlugins.onError(t);
             }
@@ -356,34 +1402,139 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
 
         private final DecoratingMember<T> m;
 
-        Checker(DecoratingMember<T> m) {
+        // true if checking an idle member in the background
+        private final boolean background;
+
+        // only set if metrics enabled
+        private long startTime;
+
+        Checker(DecoratingMember<T> m, boolean background) {
             this.m = m;
+            this.background = background;
         }
 
         @Override
         public void run() {
+            log.debug("performing health check on {}", m);
+            if (metricsEnabled) {
+                startTime = System.nanoTime();
+            }
+            Single<Boolean> check = null;
+            boolean healthy = false;
             try {
-                log.debug("performing health check on {}", m);
-                if (!pool.healthCheck.test(m.value())) {
-                    log.debug("failed health check");
-                    m.disposeValue();
-                    log.debug("scheduling recreation of member {}", m);
-                    scheduled.add(scheduler.scheduleDirect(() -> {
-                        log.debug("recreating member after failed health check {}", m);
-                        notInitialized.offer(m);
-                        drain();
-                    }, pool.createRetryIntervalMs, TimeUnit.MILLISECONDS));
+                if (pool.asyncHealthCheck != null) {
+                    check = Preconditions.checkNotNull(pool.asyncHealthCheck.apply(m.value()),
+                            "asyncHealthCheck returned null");
                 } else {
-                    m.markAsChecked();
-                    initializedAvailable.offer(m);
-                    drain();
+                    healthy = pool.healthCheck.test(m.value());
+                }
+            } catch (Throwable t) {
+                // a check that fails counts as unhealthy
+                RxJavaPlugins.onError(t);
+                onChecked(false);
+                return;
+            }
+            if (check == null) {
+                onChecked(healthy);
+            } else {
+                // no thread is held while the check is pending
+                scheduled.add(check.subscribe(this::onChecked, e -> {
+                    RxJavaPlugins.onError(e);
+                    onChecked(false);
+                }));
+            }
+        }
+
+        private void onChecked(boolean healthy) {
+            if (background) {
+                backgroundChecks.decrementAndGet();
+            }
+            if (metricsEnabled) {
+                metrics.recordHealthCheck(System.nanoTime() - startTime, healthy);
+            }
+            checked(m, healthy);
+        }
+    }
+
+    final class BulkChecker implements Runnable {
+
+        private final List<DecoratingMember<T>> batch;
+
+        // true if checking idle members in the background
+        private final boolean background;
+
+        // only set if metrics enabled
+        private long startTime;
+
+        BulkChecker(List<DecoratingMember<T>> batch, boolean background) {
+            this.batch = batch;
+            this.background = background;
+        }
+
+        @Override
+        public void run() {
+            log.debug("performing bulk health check on {} members", batch.size());
+            if (metricsEnabled) {
+                startTime = System.nanoTime();
+            }
+            Single<boolean[]> check;
+            try {
+                List<T> values = new ArrayList<>(batch.size());
+                for (DecoratingMember<T> m : batch) {
+                    values.add(m.value());
                 }
+                check = Preconditions.checkNotNull(pool.bulkHealthCheck.apply(values),
+                        "bulkHealthCheck returned null");
             } catch (Throwable t) {
                 RxJavaPlugins.onError(t);
+                onChecked(NONE_HEALTHY);
+                return;
+            }
+            // no thread is held while the check is pending
+            scheduled.add(check.subscribe(this::onChecked, e -> {
+                RxJavaPlugins.onError(e);
+                onChecked(NONE_HEALTHY);
+            }));
+        }
+
+        private void onChecked(boolean[] healthy) {
+            if (background) {
+                backgroundChecks.decrementAndGet();
+            }
+            long duration = metricsEnabled ? System.nanoTime() - startTime : 0;
+            for (int i = 0; i < batch.size(); i++) {
+                // a missing result counts as unhealthy
+                boolean h = i < healthy.length && healthy[i];
+                if (metricsEnabled) {
+                    metrics.recordHealthCheck(duration, h);
+                }
+                checked(batch.get(i), h);
             }
         }
     }
 
+    private void checked(DecoratingMember<T> m, boolean healthy) {
+        if (!healthy) {
+            log.debug("failed health check");
+            // a member checked in the background is still on the initializedAvailable
+            // queue so mark it as releasing to stop it being emitted without a value
+            // (the flag is cleared when the member is recreated)
+            m.markAsReleasing();
+            m.disposeValue(() -> {
+                log.debug("scheduling recreation of member {}", m);
+                scheduled.add(scheduler.scheduleDirect(() -> {
+                    log.debug("recreating member after failed health check {}", m);
+                    notInitialized.offer(m);
+                    drain();
+                }, pool.createRetryIntervalMs, TimeUnit.MILLISECONDS));
+            });
+        } else {
+            m.markAsChecked();
+            initializedAvailable.offer(m.index());
+            drainAfterBlockingWork();
+        }
+    }
+
     @Override
     public void close() {
         cancel();
@@ -392,6 +1543,7 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
     private void disposeAll() {
         initializedAvailable.clear();
         toBeReleased.clear();
+        toBeRotated.clear();
         notInitialized.clear();
         disposeValues();
         removeAllObservers();
@@ -416,82 +1568,231 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
 
     private static final class Observers<T> {
 
-        final List<MemberSingleObserver<T>> observers;
+        private final AtomicInteger pendingAcquires;
 
-        // an observer is ready until it is emitted to
-        final List<Boolean> ready;
+        Observers(AtomicInteger pendingAcquires) {
+            this.pendingAcquires = pendingAcquires;
+        }
 
-        // the number of true values in the ready array
-        // which is the number of observers that can be
-        // emitted to
-        int readyCount;
+        // default priority observers that can be emitted to in order of arrival,
+        // linked through MemberSingleObserver.previous and MemberSingleObserver.next
+        // so that add, remove and poll are O(1)
+        MemberSingleObserver<T> head;
+        MemberSingleObserver<T> tail;
 
-        // used as the starting point of the next check for an
-        // observer to emit to (for a round-robin). Is 0 when no
-        // observers
-        int index;
+        // prioritized observers that can be emitted to as a binary min-heap on
+        // MemberSingleObserver.key (with the position of each observer held in
+        // MemberSingleObserver.heapIndex) so that add, remove and poll are O(log n)
+        @SuppressWarnings("unchecked")
+        MemberSingleObserver<T>[] heap = new MemberSingleObserver[0];
+        int heapSize;
 
-        int requested;
+        // the number of observers in the list which is the number of observers that
+        // can be emitted to
+        int readyCount;
 
-        Observers() {
-            observers = new ArrayList<>();
-            ready = new ArrayList<>();
-            readyCount = 0;
-            index = 0;
-            requested = 0;
-        }
+        // the number of members wanted by the observers in the list (batch observers
+        // want more than one)
+        long demand;
 
         void add(MemberSingleObserver<T> o) {
-            observers.add(o);
-            ready.add(Boolean.TRUE);
+            o.ready = true;
+            if (o.priority == 0) {
+                o.previous = tail;
+                o.next = null;
+                if (tail == null) {
+                    head = o;
+                } else {
+                    tail.next = o;
+                }
+                tail = o;
+            } else {
+                if (heapSize == heap.length) {
+                    heap = Arrays.copyOf(heap, Math.max(16, heapSize * 2));
+                }
+                heapSize++;
+                siftUp(heapSize - 1, o);
+            }
             readyCount++;
-            requested++;
+            demand += o.wanted();
         }
 
-        void remove(MemberSingleObserver<T> o) {
-            int i = observers.indexOf(o);
-            if (i == -1) {
-                // not present
-                return;
+        // returns true if and only if o was removed
+        boolean remove(MemberSingleObserver<T> o) {
+            if (!o.ready) {
+                // not present (already emitted to or never added)
+                return false;
+            }
+            if (o.heapIndex >= 0) {
+                int i = o.heapIndex;
+                heapSize--;
+                MemberSingleObserver<T> last = heap[heapSize];
+                heap[heapSize] = null;
+                if (last != o) {
+                    siftDown(i, last);
+                    if (heap[i] == last) {
+                        siftUp(i, last);
+                    }
+                }
+                o.heapIndex = -1;
+            } else {
+                MemberSingleObserver<T> previous = o.previous;
+                MemberSingleObserver<T> next = o.next;
+                if (previous == null) {
+                    head = next;
+                } else {
+                    previous.next = next;
+                }
+                if (next == null) {
+                    tail = previous;
+                } else {
+                    next.previous = previous;
+                }
+                o.previous = null;
+                o.next = null;
             }
-            readyCount = ready.get(i) ? readyCount - 1 : readyCount;
-            if (index >= i && index > 0) {
-                index--;
+            o.ready = false;
+            readyCount--;
+            demand -= o.wanted();
+            pendingAcquires.decrementAndGet();
+            return true;
+        }
+
+        // returns the observer to be emitted to next, the earlier (by key) of the
+        // head of the list and the top of the heap
+        // precondition: readyCount > 0
+        MemberSingleObserver<T> peek() {
+            if (heapSize == 0) {
+                return head;
+            } else if (head == null || heap[0].key < head.key) {
+                return heap[0];
+            } else {
+                return head;
             }
-            observers.remove(i);
-            ready.remove(i);
+        }
+
+        // precondition: readyCount > 0
+        MemberSingleObserver<T> poll() {
+            MemberSingleObserver<T> o = peek();
+            remove(o);
+            return o;
         }
 
         void removeAll() {
-            observers.clear();
-            ready.clear();
+            MemberSingleObserver<T> o = head;
+            while (o != null) {
+                MemberSingleObserver<T> next = o.next;
+                o.previous = null;
+                o.next = null;
+                o.ready = false;
+                o.poolClosed();
+                o = next;
+            }
+            head = null;
+            tail = null;
+            for (int i = 0; i < heapSize; i++) {
+                heap[i].heapIndex = -1;
+                heap[i].ready = false;
+                heap[i].poolClosed();
+                heap[i] = null;
+            }
+            heapSize = 0;
+            pendingAcquires.addAndGet(-readyCount);
             readyCount = 0;
-            index = 0;
+            demand = 0;
+        }
+
+        private void siftUp(int i, MemberSingleObserver<T> o) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                MemberSingleObserver<T> p = heap[parent];
+                if (o.key >= p.key) {
+                    break;
+                }
+                place(i, p);
+                i = parent;
+            }
+            place(i, o);
+        }
+
+        private void siftDown(int i, MemberSingleObserver<T> o) {
+            int half = heapSize >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < heapSize && heap[right].key < heap[child].key) {
+                    child = right;
+                }
+                if (o.key <= heap[child].key) {
+                    break;
+                }
+                place(i, heap[child]);
+                i = child;
+            }
+            place(i, o);
+        }
+
+        private void place(int i, MemberSingleObserver<T> o) {
+            heap[i] = o;
+            o.heapIndex = i;
         }
     }
 
-    private static final class Emitter<T> implements Runnable {
+    final class Emitter implements Runnable {
 
-        private final Worker worker;
         private final MemberSingleObserver<T> observer;
-        private final Member<T> m;
+        private final DecoratingMember<T> m;
 
-        Emitter(Worker worker, MemberSingleObserver<T> observer, Member<T> m) {
-            this.worker = worker;
+        Emitter(MemberSingleObserver<T> observer, DecoratingMember<T> m) {
             this.observer = observer;
             this.m = m;
         }
 
         @Override
         public void run() {
-            worker.dispose();
-            try {
-                observer.child.onSuccess(m);
-            } catch (Throwable e) {
-                RxJavaPlugins.onError(e);
-            } finally {
-                observer.dispose();
-            }
+            emitNow(observer, m);
+        }
+    }
+
+    final class BatchEmitter implements Runnable {
+
+        private final BatchObserver<T> observer;
+
+        BatchEmitter(BatchObserver<T> observer) {
+            this.observer = observer;
+        }
+
+        @Override
+        public void run() {
+            emitBatchNow(observer);
+        }
+    }
+
+    final class PrioritySingle extends Single<Member<T>> {
+
+        private final int priority;
+
+        PrioritySingle(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        protected void subscribeActual(SingleObserver<? super Member<T>> observer) {
+            subscribeMember(observer, priority);
+        }
+    }
+
+    final class BatchSingle extends Single<List<Member<T>>> {
+
+        private final int n;
+
+        BatchSingle(int n) {
+            this.n = n;
+        }
+
+        @Override
+        protected void subscribeActual(SingleObserver<? super List<Member<T>>> observer) {
+            subscribeBatch(observer, n);
         }
     }
 
@@ -501,14 +1802,50 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
         drain();
     }
 
-    static final class MemberSingleObserver<T> extends AtomicReference<MemberSingle<T>> implements Disposable {
+    static class MemberSingleObserver<T> extends AtomicReference<MemberSingle<T>> implements Disposable {
 
         private static final long serialVersionUID = -7650903191002190468L;
 
         final SingleObserver<? super Member<T>> child;
 
-        MemberSingleObserver(SingleObserver<? super Member<T>> child, MemberSingle<T> parent) {
+        // 0 is the default priority, higher priority observers are emitted to first
+        final int priority;
+
+        // synchronized by MemberSingle.drain() wip
+        // true while this observer is waiting in Observers to be emitted to
+        boolean ready;
+
+        // synchronized by MemberSingle.drain() wip
+        MemberSingleObserver<T> previous;
+
+        // synchronized by MemberSingle.drain() wip
+        MemberSingleObserver<T> next;
+
+        // position in Observers.heap, -1 if not in the heap
+        // synchronized by MemberSingle.drain() wip
+        int heapIndex = -1;
+
+        // order in which waiting observers are emitted to (lowest first) being the
+        // scheduler time in ms of arrival less an allowance for priority
+        // synchronized by MemberSingle.drain() wip (published by toBeAdded)
+        long key;
+
+        // time of subscription, only set if metrics enabled
+        final long subscribeTime;
+
+        // scheduler time in ms when this observer started waiting
+        // synchronized by MemberSingle.drain() wip (published by toBeAdded)
+        long arrivalTime;
+
+        // scheduler time in ms after which this observer fails if still waiting, only
+        // set if maxWaitTime set
+        // synchronized by MemberSingle.drain() wip (published by toBeAdded)
+        long deadline;
+
+        MemberSingleObserver(SingleObserver<? super Member<T>> child, MemberSingle<T> parent, int priority) {
             this.child = child;
+            this.priority = priority;
+            this.subscribeTime = parent.metricsEnabled ? System.nanoTime() : 0;
             lazySet(parent);
         }
 
@@ -524,6 +1861,107 @@ final class MemberSingle<T> extends Single<Member<T>> implements Closeable {
         public boolean isDisposed() {
             return get() == null;
         }
+
+        // the number of members still wanted by this observer
+        // synchronized by MemberSingle.drain() wip
+        long wanted() {
+            return 1;
+        }
+
+        void onSuccess(Member<T> m) {
+            child.onSuccess(m);
+        }
+
+        void onError(Throwable e) {
+            child.onError(e);
+        }
+
+        // called when this observer is removed because the pool has closed
+        void poolClosed() {
+            // subscribers to member() are not notified
+        }
+    }
+
+    static final class BlockingObserver<T> extends MemberSingleObserver<T> {
+
+        private static final long serialVersionUID = -2441787622338472380L;
+
+        private final Thread thread;
+
+        private volatile Member<T> member;
+
+        private volatile Throwable error;
+
+        BlockingObserver(MemberSingle<T> parent) {
+            super(null, parent, 0);
+            this.thread = Thread.currentThread();
+        }
+
+        @Override
+        void onSuccess(Member<T> m) {
+            member = m;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        void onError(Throwable e) {
+            error = e;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        void poolClosed() {
+            if (getAndSet(null) != null) {
+                onError(new PoolClosedException());
+            }
+        }
+
+        boolean isDone() {
+            return member != null || error != null;
+        }
+
+        Member<T> result() throws TimeoutException {
+            Throwable e = error;
+            if (e == null) {
+                return member;
+            } else if (e instanceof TimeoutException) {
+                throw (TimeoutException) e;
+            } else if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            } else if (e instanceof Error) {
+                throw (Error) e;
+            } else {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static final class BatchObserver<T> extends MemberSingleObserver<T> {
+
+        private static final long serialVersionUID = 4618426281372613373L;
+
+        final SingleObserver<? super List<Member<T>>> batchChild;
+        final int size;
+
+        // synchronized by MemberSingle.drain() wip until emitted
+        final List<Member<T>> gathered;
+
+        BatchObserver(SingleObserver<? super List<Member<T>>> child, int size, MemberSingle<T> parent) {
+            super(null, parent, 0);
+            this.batchChild = child;
+            this.size = size;
+            this.gathered = new ArrayList<>(size);
+        }
+
+        @Override
+        long wanted() {
+            return size - gathered.size();
+        }
+
+        @Override
+        void onError(Throwable e) {
+            batchChild.onError(e);
+        }
     }
 
 }
@@ -1,60 +1,183 @@
 package org.davidmoten.rxjava3.pool;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 
 import com.github.davidmoten.guavamini.Preconditions;
 import com.github.davidmoten.guavamini.annotations.VisibleForTesting;
 
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleObserver;
 import io.reactivex.rxjava3.functions.Action;
 import io.reactivex.rxjava3.functions.Consumer;
+import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.functions.Predicate;
+import io.reactivex.rxjava3.functions.Supplier;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public final class NonBlockingPool<T> implements Pool<T> {
 
+    // exactly one of factory and asyncFactory is non-null
     final Callable<? extends T> factory;
+    final Supplier<? extends Single<? extends T>> asyncFactory;
     final Predicate<? super T> healthCheck;
-    final long idleTimeBeforeHealthCheckMs;
+    // if non-null used instead of healthCheck
+    final Function<? super T, ? extends Single<Boolean>> asyncHealthCheck;
+    // may be null, takes precedence over the other health checks
+    final Function<? super List<T>, ? extends Single<boolean[]>> bulkHealthCheck;
+    // mutable via reconfigure()
+    volatile long idleTimeBeforeHealthCheckMs;
     final Consumer<? super T> disposer;
-    final int maxSize;
-    final long maxIdleTimeMs;
-    final long createRetryIntervalMs;
+    // if non-null used instead of disposer
+    final Function<? super T, ? extends Completable> asyncDisposer;
+    // mutable via reconfigure()
+    volatile int maxSize;
+    volatile long maxIdleTimeMs;
+    volatile long createRetryIntervalMs;
+    // the largest maxSize that can be set by reconfigure() (or sizeController)
+    final int maxSizeLimit;
+    // may be null
+    final SizeController sizeController;
+    final long sizeControlIntervalMs;
+    // may be null (unlimited)
+    final MemberBudget budget;
+    // if true then sweep() is called by the owner of this pool instead of by a
+    // periodic task of its own
+    final boolean sweptExternally;
     final BiFunction<? super T, ? super Checkin, ? extends T> checkinDecorator;
     final Scheduler scheduler;
+    // runs the factory, health check and disposer
+    final Scheduler blockingScheduler;
+    // 0 disables leak detection
+    final long leakDetectionThresholdMs;
+    final int leakStackTraceSampling;
+    final boolean reclaimLeakedMembers;
+    // 0 means members live forever
+    final long maxLifetimeMs;
+    final long maxLifetimeJitterMs;
+    // 0 disables background health checks
+    final long backgroundHealthCheckIntervalMs;
+    final long backgroundHealthCheckJitterMs;
+    final int maxConcurrentBackgroundHealthChecks;
     final Action closeAction;
+    final int maxDirectEmitDepth;
+    // 0 disables the subscribe fast path
+    final int maxSubscribeEmitDepth;
+    final int minIdle;
+    final PoolMetrics metrics;
+    final long maxWaitTimeMs;
+    final int maxPendingAcquires;
+    final long priorityAgingIntervalMs;
+    final Fairness fairness;
+
+    // if non-null called by the drain loop when this pool has idle members and
+    // nothing waiting (set by a StripedNonBlockingPool to serve subscribers
+    // waiting on its other stripes)
+    volatile Runnable idleListener;
 
     private final AtomicReference<MemberSingle<T>> member = new AtomicReference<>();
     private volatile boolean closed;
 
-    NonBlockingPool(Callable<? extends T> factory, Predicate<? super T> healthCheck, Consumer<? super T> disposer,
-            int maxSize, long idleTimeBeforeHealthCheckMs, long maxIdleTimeMs, long createRetryIntervalMs,
-            BiFunction<? super T, ? super Checkin, ? extends T> checkinDecorator, Scheduler scheduler,
-            Action closeAction) {
-        Preconditions.checkNotNull(factory);
-        Preconditions.checkNotNull(healthCheck);
-        Preconditions.checkNotNull(disposer);
+    NonBlockingPool(Builder<T> builder) {
+        this(builder, 0, 1, builder.closeAction);
+    }
+
+    // builds stripe number `stripe` of `stripes` which gets its share of the
+    // builder's maxSize, minIdle, maxSizeLimit and maxPendingAcquires (all of them
+    // if stripes is 1)
+    NonBlockingPool(Builder<T> b, int stripe, int stripes, Action closeAction) {
+        int maxSize = share(b.maxSize, stripes, stripe);
+        int minIdle = share(b.minIdle, stripes, stripe);
+        int maxSizeLimit = share(b.maxSizeLimit == 0 ? b.maxSize : b.maxSizeLimit, stripes, stripe);
+        // every stripe allows at least one waiting subscriber
+        int maxPendingAcquires = Math.max(1, share(b.maxPendingAcquires, stripes, stripe));
+        Scheduler blockingScheduler = b.blockingScheduler == null ? b.scheduler : b.blockingScheduler;
+        Preconditions.checkArgument((b.factory == null) != (b.asyncFactory == null),
+                "exactly one of factory and asyncFactory must be set");
+        Preconditions.checkNotNull(b.healthCheck);
+        Preconditions.checkNotNull(b.disposer);
         Preconditions.checkArgument(maxSize > 0);
-        Preconditions.checkNotNull(checkinDecorator);
-        Preconditions.checkNotNull(scheduler);
-        Preconditions.checkArgument(createRetryIntervalMs >= 0, "createRetryIntervalMs must be >=0");
+        Preconditions.checkNotNull(b.checkinDecorator);
+        Preconditions.checkNotNull(b.scheduler);
+        Preconditions.checkArgument(b.createRetryIntervalMs >= 0, "createRetryIntervalMs must be >=0");
         Preconditions.checkNotNull(closeAction);
-        Preconditions.checkArgument(maxIdleTimeMs >= 0, "maxIdleTime must be >=0");
-        this.factory = factory;
-        this.healthCheck = healthCheck;
-        this.disposer = disposer;
+        Preconditions.checkArgument(b.maxIdleTimeMs >= 0, "maxIdleTime must be >=0");
+        Preconditions.checkArgument(b.maxDirectEmitDepth >= 0, "maxDirectEmitDepth must be >=0");
+        Preconditions.checkArgument(b.maxSubscribeEmitDepth >= 0, "maxSubscribeEmitDepth must be >=0");
+        Preconditions.checkArgument(minIdle >= 0 && minIdle <= maxSize, "minIdle must be between 0 and maxSize");
+        Preconditions.checkNotNull(b.metrics);
+        Preconditions.checkArgument(b.maxWaitTimeMs >= 0, "maxWaitTime must be >=0");
+        Preconditions.checkArgument(maxPendingAcquires > 0, "maxPendingAcquires must be >0");
+        Preconditions.checkArgument(b.priorityAgingIntervalMs > 0, "priorityAgingInterval must be >0");
+        Preconditions.checkNotNull(b.fairness);
+        Preconditions.checkArgument(maxSizeLimit >= maxSize, "maxSizeLimit must be >= maxSize");
+        Preconditions.checkArgument(b.sizeControlIntervalMs > 0, "sizeControlInterval must be >0");
+        Preconditions.checkNotNull(blockingScheduler);
+        Preconditions.checkArgument(b.leakDetectionThresholdMs >= 0, "leakDetectionThreshold must be >=0");
+        Preconditions.checkArgument(b.leakStackTraceSampling >= 0, "leakStackTraceSampling must be >=0");
+        Preconditions.checkArgument(b.maxLifetimeMs >= 0, "maxLifetime must be >=0");
+        Preconditions.checkArgument(
+                b.maxLifetimeJitterMs == 0 || b.maxLifetimeJitterMs > 0 && b.maxLifetimeJitterMs < b.maxLifetimeMs,
+                "maxLifetime jitter must be 0 or less than maxLifetime");
+        Preconditions.checkArgument(b.backgroundHealthCheckIntervalMs >= 0,
+                "backgroundHealthCheck interval must be >=0");
+        Preconditions.checkArgument(b.backgroundHealthCheckJitterMs == 0 || b.backgroundHealthCheckJitterMs > 0
+                && b.backgroundHealthCheckJitterMs < b.backgroundHealthCheckIntervalMs,
+                "backgroundHealthCheck jitter must be 0 or less than the interval");
+        Preconditions.checkArgument(b.maxConcurrentBackgroundHealthChecks > 0,
+                "maxConcurrentBackgroundHealthChecks must be >0");
+        this.factory = b.factory;
+        this.asyncFactory = b.asyncFactory;
+        this.healthCheck = b.healthCheck;
+        this.asyncHealthCheck = b.asyncHealthCheck;
+        this.bulkHealthCheck = b.bulkHealthCheck;
+        this.disposer = b.disposer;
+        this.asyncDisposer = b.asyncDisposer;
         this.maxSize = maxSize;
-        this.idleTimeBeforeHealthCheckMs = idleTimeBeforeHealthCheckMs;
-        this.maxIdleTimeMs = maxIdleTimeMs;
-        this.createRetryIntervalMs = createRetryIntervalMs;
-        this.checkinDecorator = checkinDecorator;
-        this.scheduler = scheduler;// schedules retries
+        this.idleTimeBeforeHealthCheckMs = b.idleTimeBeforeHealthCheckMs;
+        this.maxIdleTimeMs = b.maxIdleTimeMs;
+        this.createRetryIntervalMs = b.createRetryIntervalMs;
+        this.checkinDecorator = b.checkinDecorator;
+        this.scheduler = b.scheduler;// schedules retries
         this.closeAction = closeAction;
+        this.maxDirectEmitDepth = b.maxDirectEmitDepth;
+        this.maxSubscribeEmitDepth = b.maxSubscribeEmitDepth;
+        this.minIdle = minIdle;
+        this.metrics = b.metrics;
+        this.maxWaitTimeMs = b.maxWaitTimeMs;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.priorityAgingIntervalMs = b.priorityAgingIntervalMs;
+        this.fairness = b.fairness;
+        this.maxSizeLimit = maxSizeLimit;
+        this.sizeController = b.sizeController;
+        this.sizeControlIntervalMs = b.sizeControlIntervalMs;
+        this.budget = b.budget;
+        this.sweptExternally = b.sweptExternally;
+        this.blockingScheduler = blockingScheduler;
+        this.leakDetectionThresholdMs = b.leakDetectionThresholdMs;
+        this.leakStackTraceSampling = b.leakStackTraceSampling;
+        this.reclaimLeakedMembers = b.reclaimLeakedMembers;
+        this.maxLifetimeMs = b.maxLifetimeMs;
+        this.maxLifetimeJitterMs = b.maxLifetimeJitterMs;
+        this.backgroundHealthCheckIntervalMs = b.backgroundHealthCheckIntervalMs;
+        this.backgroundHealthCheckJitterMs = b.backgroundHealthCheckJitterMs;
+        this.maxConcurrentBackgroundHealthChecks = b.maxConcurrentBackgroundHealthChecks;
+    }
+
+    // the share of n allocated to the stripe with the given index
+    private static int share(int n, int stripes, int index) {
+        return n / stripes + (index < n % stripes ? 1 : 0);
     }
 
     private MemberSingle<T> createMember() {
@@ -63,6 +186,74 @@ public final class NonBlockingPool<T> implements Pool<T> {
 
     @Override
     public Single<Member<T>> member() {
+        return memberSingle();
+    }
+
+    /**
+     * Returns a Single that emits a member like {@link #member()} except that
+     * while waiting for a member a subscriber with higher priority is emitted to
+     * before subscribers with lower priority. So that low priority subscribers are
+     * not starved each unit of priority is worth one priority aging interval (see
+     * {@link Builder#priorityAgingInterval(long, TimeUnit)}) of waiting time. If
+     * the pool was built with {@link Fairness#FIFO} the priority is ignored.
+     * 
+     * @param priority priority of the checkout, 0 is the priority of
+     *                 {@link #member()}
+     * @return a Single that emits a member
+     */
+    @Override
+    public Single<Member<T>> member(int priority) {
+        if (priority == 0 || fairness == Fairness.FIFO) {
+            return memberSingle();
+        } else {
+            return memberSingle().member(priority);
+        }
+    }
+
+    /**
+     * Returns a member, blocking the current thread for at most the given timeout
+     * if none is available. If an initialized member is idle and nobody is waiting
+     * then it is taken on the current thread without allocating a subscription or
+     * jumping threads. Otherwise the caller waits its turn with subscribers to
+     * {@link #member()} and is unparked directly by the emission. The member
+     * should be checked in when finished with as usual.
+     * 
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return a member
+     * @throws InterruptedException   if the thread is interrupted while waiting
+     * @throws TimeoutException       if no member was available within the
+     *                                timeout (or maxWaitTime)
+     * @throws PoolClosedException    if the pool is closed (or closes while
+     *                                waiting)
+     * @throws PoolExhaustedException if maxPendingAcquires has been reached
+     */
+    public Member<T> acquire(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        Preconditions.checkArgument(timeout >= 0, "timeout must be >=0");
+        Preconditions.checkNotNull(unit);
+        if (closed) {
+            throw new PoolClosedException();
+        }
+        return memberSingle().acquire(timeout, unit);
+    }
+
+    /**
+     * Returns a Single that emits {@code n} distinct members together. Waiting
+     * batch requests are served in order of arrival with other requests and only
+     * the oldest waiting request gathers members so concurrent batch requests
+     * cannot deadlock each other. If the subscription is disposed before emission
+     * any members already gathered are returned to the pool.
+     * 
+     * @param n number of members, between 1 and maxSize inclusive
+     * @return a Single that emits a list of n members
+     */
+    @Override
+    public Single<List<Member<T>>> members(int n) {
+        Preconditions.checkArgument(n > 0 && n <= maxSize, "n must be between 1 and maxSize");
+        return memberSingle().members(n);
+    }
+
+    private MemberSingle<T> memberSingle() {
         while (true) {
             MemberSingle<T> m = member.get();
             if (m != null)
@@ -70,12 +261,73 @@ public final class NonBlockingPool<T> implements Pool<T> {
             else {
                 m = createMember();
                 if (member.compareAndSet(null, m)) {
+                    m.start();
                     return m;
                 }
             }
         }
     }
 
+    /**
+     * Returns a Completable that initializes minIdle members (creating them all in
+     * parallel) and checks them in to the pool.
+     * 
+     * @return a Completable that completes when minIdle members are initialized
+     */
+    public Completable warmup() {
+        return warmup(Math.max(1, minIdle));
+    }
+
+    /**
+     * Returns a Completable that initializes minIdle members, creating at most
+     * {@code maxConcurrency} at a time, and checks them in to the pool. Members
+     * that are already initialized and idle count towards minIdle.
+     * 
+     * @param maxConcurrency maximum number of members created concurrently
+     * @return a Completable that completes when minIdle members are initialized
+     */
+    public Completable warmup(int maxConcurrency) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be >0");
+        if (minIdle == 0) {
+            return Completable.complete();
+        }
+        return Completable.defer(() -> {
+            // members are held until all have been created so that distinct members
+            // are initialized, then returned to the pool (also on error or dispose)
+            Collection<Member<T>> held = new ConcurrentLinkedQueue<>();
+            return Flowable.range(1, minIdle) //
+                    .flatMapSingle(i -> member(), false, maxConcurrency) //
+                    .doOnNext(held::add) //
+                    .ignoreElements() //
+                    .doFinally(() -> checkinAll(held));
+        });
+    }
+
+    /**
+     * Subscribes the observer and emits to it on the current thread only if an
+     * initialized member is immediately available (and nobody is waiting) and
+     * {@link Builder#maxSubscribeEmitDepth(int)} permits it.
+     * 
+     * @param observer observer to subscribe
+     * @return true if and only if the observer was subscribed
+     */
+    boolean trySubscribeAvailable(SingleObserver<? super Member<T>> observer) {
+        return !closed && maxSubscribeEmitDepth > 0
+                && memberSingle().trySubscribeAvailable(observer, maxSubscribeEmitDepth);
+    }
+
+    /**
+     * As {@link #trySubscribeAvailable(SingleObserver)} but regardless of
+     * {@link Builder#maxSubscribeEmitDepth(int)}. Only to be called at the start
+     * of a task on the scheduler (so not nested in other emissions).
+     * 
+     * @param observer observer to subscribe
+     * @return true if and only if the observer was subscribed
+     */
+    boolean trySubscribeAvailableOnScheduler(SingleObserver<? super Member<T>> observer) {
+        return !closed && memberSingle().trySubscribeAvailable(observer, 1);
+    }
+
     public void checkin(Member<T> m) {
         MemberSingle<T> mem = member.get();
         if (mem != null) {
@@ -83,6 +335,14 @@ public final class NonBlockingPool<T> implements Pool<T> {
         }
     }
 
+    @Override
+    public void checkinAll(Collection<? extends Member<T>> members) {
+        MemberSingle<T> mem = member.get();
+        if (mem != null) {
+            mem.checkinAll(members);
+        }
+    }
+
     @Override
     public void close() {
         closed = true;
@@ -106,10 +366,161 @@ public final class NonBlockingPool<T> implements Pool<T> {
         return closed;
     }
 
+    // releases idle members and fails expired waiters (for a pool that is swept
+    // externally)
+    void sweep() {
+        MemberSingle<T> m = member.get();
+        if (m != null) {
+            m.sweep();
+        }
+    }
+
+    // releases one idle member (if there is one) to free budget for another pool
+    void evictIdle() {
+        MemberSingle<T> m = member.get();
+        if (m != null) {
+            m.evictIdle();
+        }
+    }
+
+    // called by the budget when a permit may have become available
+    void drainMembers() {
+        MemberSingle<T> m = member.get();
+        if (m != null) {
+            m.drainMembers();
+        }
+    }
+
+    int idleCount() {
+        MemberSingle<T> m = member.get();
+        return m == null ? 0 : m.idleCount();
+    }
+
+    // returns true if there are no member values, no members being created and no
+    // waiting subscribers (reads are racy so only reliable if nothing is
+    // subscribing concurrently)
+    boolean isEmpty() {
+        MemberSingle<T> m = member.get();
+        return m == null || m.isEmpty();
+    }
+
+    /**
+     * Returns a builder of changes to the configuration of this pool that are
+     * applied while the pool is in use (see {@link Reconfiguration#apply()}).
+     * Values not set keep their current values.
+     * 
+     * @return a builder of configuration changes
+     */
+    public Reconfiguration reconfigure() {
+        return new Reconfiguration();
+    }
+
+    public final class Reconfiguration {
+
+        private int maxSize = NonBlockingPool.this.maxSize;
+        private long maxIdleTimeMs = NonBlockingPool.this.maxIdleTimeMs;
+        private long idleTimeBeforeHealthCheckMs = NonBlockingPool.this.idleTimeBeforeHealthCheckMs;
+        private long createRetryIntervalMs = NonBlockingPool.this.createRetryIntervalMs;
+
+        Reconfiguration() {
+        }
+
+        /**
+         * Sets the maximum number of members. If reduced then idle members above the
+         * new size are released immediately and members in use above the new size
+         * are released when checked in. If increased then new members are created on
+         * demand.
+         * 
+         * @param maxSize maximum number of members, between minIdle (and 1) and
+         *                maxSizeLimit inclusive
+         * @return this
+         */
+        public Reconfiguration maxSize(int maxSize) {
+            Preconditions.checkArgument(maxSize > 0 && maxSize >= minIdle && maxSize <= maxSizeLimit,
+                    "maxSize must be between max(1, minIdle) and maxSizeLimit");
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Reconfiguration maxIdleTime(long value, TimeUnit unit) {
+            Preconditions.checkArgument(value >= 0);
+            this.maxIdleTimeMs = unit.toMillis(value);
+            return this;
+        }
+
+        public Reconfiguration idleTimeBeforeHealthCheck(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            this.idleTimeBeforeHealthCheckMs = unit.toMillis(duration);
+            return this;
+        }
+
+        public Reconfiguration createRetryInterval(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            this.createRetryIntervalMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Applies the changes to the pool. Checked out members and waiting
+         * subscribers are unaffected (apart from the release on checkin of members
+         * above a reduced maxSize). Members checked in before maxIdleTime is changed
+         * from 0 are not released for being idle until they are next checked in.
+         */
+        public void apply() {
+            NonBlockingPool.this.idleTimeBeforeHealthCheckMs = idleTimeBeforeHealthCheckMs;
+            NonBlockingPool.this.createRetryIntervalMs = createRetryIntervalMs;
+            NonBlockingPool.this.maxIdleTimeMs = maxIdleTimeMs;
+            NonBlockingPool.this.maxSize = maxSize;
+            MemberSingle<T> m = member.get();
+            if (m != null) {
+                m.reconfigure();
+            }
+        }
+    }
+
+    final class Gauges implements PoolMetrics.Gauges {
+
+        @Override
+        public int inUse() {
+            MemberSingle<T> m = member.get();
+            return m == null ? 0 : m.inUseCount();
+        }
+
+        @Override
+        public int idle() {
+            MemberSingle<T> m = member.get();
+            return m == null ? 0 : m.idleCount();
+        }
+
+        @Override
+        public int initializing() {
+            MemberSingle<T> m = member.get();
+            return m == null ? 0 : m.initializingCount();
+        }
+
+        @Override
+        public int waiting() {
+            MemberSingle<T> m = member.get();
+            return m == null ? 0 : m.waitingCount();
+        }
+    }
+
     public static <T> Builder<T> factory(Callable<? extends T> factory) {
         return new Builder<T>().factory(factory);
     }
 
+    /**
+     * Returns a builder for a pool whose members are created asynchronously (see
+     * {@link Builder#asyncFactory(Supplier)}).
+     * 
+     * @param <T>     member type
+     * @param factory supplies a Single that emits a new value on each subscription
+     * @return builder
+     */
+    public static <T> Builder<T> asyncFactory(Supplier<? extends Single<? extends T>> factory) {
+        return new Builder<T>().asyncFactory(factory);
+    }
+
     public static class Builder<T> {
 
         @VisibleForTesting
@@ -122,17 +533,45 @@ public final class NonBlockingPool<T> implements Pool<T> {
 
         private static final BiFunction<Object, Checkin, Object> DEFAULT_CHECKIN_DECORATOR = (x, y) -> x;
         private Callable<? extends T> factory;
+        private Supplier<? extends Single<? extends T>> asyncFactory;
         private Predicate<? super T> healthCheck = ALWAYS_TRUE;
+        private Function<? super T, ? extends Single<Boolean>> asyncHealthCheck;
+        private Function<? super List<T>, ? extends Single<boolean[]>> bulkHealthCheck;
         private long idleTimeBeforeHealthCheckMs = 1000;
         private Consumer<? super T> disposer = Consumers.doNothing();
+        private Function<? super T, ? extends Completable> asyncDisposer;
         private int maxSize = 10;
         private long createRetryIntervalMs = 30000;
         private Scheduler scheduler = Schedulers.computation();
+        // null means the same as scheduler
+        private Scheduler blockingScheduler;
         private long maxIdleTimeMs;
         @SuppressWarnings("unchecked")
         private BiFunction<? super T, ? super Checkin, ? extends T> checkinDecorator = (BiFunction<T, Checkin, T>) DEFAULT_CHECKIN_DECORATOR;
         private Action closeAction = () -> {
         };
+        private int maxDirectEmitDepth;
+        private int maxSubscribeEmitDepth = 16;
+        private int minIdle;
+        private PoolMetrics metrics = PoolMetrics.NONE;
+        private long maxWaitTimeMs;
+        private int maxPendingAcquires = Integer.MAX_VALUE;
+        private long priorityAgingIntervalMs = 1000;
+        // 0 means the same as maxSize
+        private int maxSizeLimit;
+        private SizeController sizeController;
+        private long sizeControlIntervalMs = 1000;
+        private MemberBudget budget;
+        private boolean sweptExternally;
+        private long leakDetectionThresholdMs;
+        private int leakStackTraceSampling = 100;
+        private boolean reclaimLeakedMembers;
+        private long maxLifetimeMs;
+        private long maxLifetimeJitterMs;
+        private long backgroundHealthCheckIntervalMs;
+        private long backgroundHealthCheckJitterMs;
+        private int maxConcurrentBackgroundHealthChecks = 1;
+        private Fairness fairness = Fairness.PRIORITY;
 
         private Builder() {
         }
@@ -140,12 +579,69 @@ public final class NonBlockingPool<T> implements Pool<T> {
         public Builder<T> factory(Callable<? extends T> factory) {
             Preconditions.checkNotNull(factory);
             this.factory = factory;
+            this.asyncFactory = null;
+            return this;
+        }
+
+        /**
+         * Sets the factory used to create member values asynchronously (replacing any
+         * factory set by {@link #factory(Callable)}). The Single returned by the
+         * supplier is subscribed to once per member creation and no scheduler thread
+         * is held while it is pending. If the Single errors (or the supplier throws)
+         * then creation is retried after the createRetryInterval.
+         * 
+         * @param factory supplies a Single that emits a new value on each subscription
+         * @return this
+         */
+        public Builder<T> asyncFactory(Supplier<? extends Single<? extends T>> factory) {
+            Preconditions.checkNotNull(factory);
+            this.asyncFactory = factory;
+            this.factory = null;
             return this;
         }
 
         public Builder<T> healthCheck(Predicate<? super T> healthCheck) {
             Preconditions.checkNotNull(healthCheck);
             this.healthCheck = healthCheck;
+            this.asyncHealthCheck = null;
+            this.bulkHealthCheck = null;
+            return this;
+        }
+
+        /**
+         * Sets an asynchronous health check (replacing any health check set by
+         * {@link #healthCheck(Predicate)}). No scheduler thread is held while the
+         * returned Single is pending. A value that emits false or errors is treated
+         * as unhealthy and is disposed and recreated.
+         * 
+         * @param healthCheck returns a Single that emits true if the value is healthy
+         * @return this
+         */
+        public Builder<T> asyncHealthCheck(Function<? super T, ? extends Single<Boolean>> healthCheck) {
+            Preconditions.checkNotNull(healthCheck);
+            this.asyncHealthCheck = healthCheck;
+            this.bulkHealthCheck = null;
+            return this;
+        }
+
+        /**
+         * Sets a health check that validates many values at once (replacing any
+         * health check set by {@link #healthCheck(Predicate)} or
+         * {@link #asyncHealthCheck(Function)}), for backends where one round trip can
+         * validate many connections. The members due for a health check that are
+         * found in one pass of the pool's drain loop (or one background sweep, see
+         * {@link #backgroundHealthCheck(long, long, TimeUnit)}) are checked together
+         * in one call. The returned Single emits the result for each value in the
+         * order of the list. A missing result, or an error, counts as unhealthy.
+         * 
+         * @param healthCheck returns a Single that emits for each value true if the
+         *                    value is healthy
+         * @return this
+         */
+        public Builder<T> bulkHealthCheck(Function<? super List<T>, ? extends Single<boolean[]>> healthCheck) {
+            Preconditions.checkNotNull(healthCheck);
+            this.bulkHealthCheck = healthCheck;
+            this.asyncHealthCheck = null;
             return this;
         }
 
@@ -159,7 +655,9 @@ public final class NonBlockingPool<T> implements Pool<T> {
         /**
          * Sets the maximum time a connection can remaing idle before being scheduled
          * for release (closure). If set to 0 (regardless of unit) then idle connections
-         * are not released. If not set the default value is 30 minutes.
+         * are not released. If not set the default value is 30 minutes. Idle
+         * connections are found by a periodic sweep that runs every tenth of this
+         * time so a connection may be released up to 10% later than this time.
          * 
          * @param value duration
          * @param unit  unit of the duration
@@ -182,6 +680,22 @@ public final class NonBlockingPool<T> implements Pool<T> {
         public Builder<T> disposer(Consumer<? super T> disposer) {
             Preconditions.checkNotNull(disposer);
             this.disposer = disposer;
+            this.asyncDisposer = null;
+            return this;
+        }
+
+        /**
+         * Sets an asynchronous disposer (replacing any disposer set by
+         * {@link #disposer(Consumer)}). No scheduler thread is held while the returned
+         * Completable is pending and a released member is not recreated until its
+         * value's disposal has terminated.
+         * 
+         * @param disposer returns a Completable that disposes the value
+         * @return this
+         */
+        public Builder<T> asyncDisposer(Function<? super T, ? extends Completable> disposer) {
+            Preconditions.checkNotNull(disposer);
+            this.asyncDisposer = disposer;
             return this;
         }
 
@@ -197,6 +711,41 @@ public final class NonBlockingPool<T> implements Pool<T> {
             return this;
         }
 
+        /**
+         * Sets the scheduler on which the factory, health check and disposer are
+         * called (including the subscriptions to their asynchronous forms). Emissions
+         * to subscribers and timed work (retries, sweeps) stay on the
+         * {@link #scheduler(Scheduler) scheduler}. The default is the scheduler.
+         * 
+         * <p>
+         * A member made available by work on a separate blocking scheduler is emitted
+         * via the scheduler even if {@link #maxDirectEmitDepth(int)} is set. The
+         * exception is a caller of {@link NonBlockingPool#acquire(long, TimeUnit)},
+         * which is handed the member on its own thread (the blocking thread only
+         * unparks it).
+         * 
+         * @param scheduler scheduler for blocking work
+         * @return this
+         */
+        public Builder<T> blockingScheduler(Scheduler scheduler) {
+            Preconditions.checkNotNull(scheduler);
+            this.blockingScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Calls the factory, health check and disposer on virtual threads (see
+         * {@link #blockingScheduler(Scheduler)}) so that blocking in them does not
+         * hold platform threads. Requires Java 21 or later.
+         * 
+         * @return this
+         * @throws UnsupportedOperationException if the runtime does not support
+         *                                       virtual threads
+         */
+        public Builder<T> blockingOnVirtualThreads() {
+            return blockingScheduler(VirtualThreads.scheduler());
+        }
+
         public Builder<T> checkinDecorator(BiFunction<? super T, ? super Checkin, ? extends T> f) {
             Preconditions.checkNotNull(f);
             this.checkinDecorator = f;
@@ -209,9 +758,341 @@ public final class NonBlockingPool<T> implements Pool<T> {
             return this;
         }
 
+        /**
+         * Sets the maximum number of nested emissions on a thread for which a member
+         * that becomes available (for example by {@link Member#checkin()}) is emitted
+         * to a waiting subscriber directly on that thread. Beyond that depth the
+         * emission is made via the scheduler which jumps threads and so breaks the
+         * stack for long chains of checkout-checkins. If set to 0 (the default) then
+         * waiting subscribers are always emitted to via the scheduler.
+         * 
+         * <p>
+         * Note that a directly emitted member runs the subscriber's code on the thread
+         * that made the member available (but never on a thread of a separate
+         * {@link #blockingScheduler(Scheduler) blockingScheduler}).
+         * 
+         * <p>
+         * This setting does not affect a subscriber for which an idle member is
+         * available when it subscribes (and nobody is waiting), see
+         * {@link #maxSubscribeEmitDepth(int)}.
+         * 
+         * @param depth maximum nesting depth of direct emissions to waiting
+         *              subscribers
+         * @return this
+         */
+        public Builder<T> maxDirectEmitDepth(int depth) {
+            Preconditions.checkArgument(depth >= 0);
+            this.maxDirectEmitDepth = depth;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of nested emissions on a thread for which a
+         * subscriber is emitted an idle member directly on its subscribing thread
+         * when one is available as it subscribes (and nobody is waiting). This skips
+         * the drain loop and the scheduler. Beyond that depth the emission is made
+         * via the scheduler, which breaks the stack for long chains of
+         * checkout-checkins. If set to 0 then subscribers are always emitted to via
+         * the scheduler. The default is 16.
+         * 
+         * @param depth maximum nesting depth of direct emissions to subscribers on
+         *              subscription
+         * @return this
+         */
+        public Builder<T> maxSubscribeEmitDepth(int depth) {
+            Preconditions.checkArgument(depth >= 0);
+            this.maxSubscribeEmitDepth = depth;
+            return this;
+        }
+
+        /**
+         * Sets the minimum number of initialized members that the pool keeps. Idle
+         * members are not released by maxIdleTime if that would leave fewer than
+         * minIdle initialized members, and the periodic idle sweep initializes
+         * members in the background to top the pool back up to minIdle. Use
+         * {@link NonBlockingPool#warmup()} to initialize minIdle members before first
+         * use. Default is 0.
+         * 
+         * @param minIdle minimum number of initialized members, at most maxSize
+         * @return this
+         */
+        public Builder<T> minIdle(int minIdle) {
+            Preconditions.checkArgument(minIdle >= 0);
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        /**
+         * Sets the metrics that receive measurements from the pool (wait, hold,
+         * creation and health check times and gauges of the pool state). By default
+         * nothing is measured.
+         * 
+         * @param metrics receives measurements
+         * @return this
+         */
+        public Builder<T> metrics(PoolMetrics metrics) {
+            Preconditions.checkNotNull(metrics);
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a subscriber to {@link Pool#member()} (or
+         * {@link Pool#members(int)}) waits for a member. A subscriber that has waited
+         * longer is failed with a {@link java.util.concurrent.TimeoutException}.
+         * Waiting subscribers are checked by a periodic sweep that runs every tenth of
+         * this time (and whenever the pool state changes). If set to 0 (the default)
+         * subscribers wait indefinitely.
+         * 
+         * @param duration maximum wait time
+         * @param unit     unit of the duration
+         * @return this
+         */
+        public Builder<T> maxWaitTime(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            Preconditions.checkNotNull(unit);
+            this.maxWaitTimeMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Enables health checks of idle members in the background so that checkouts
+         * rarely wait for a health check and dead members are found before they are
+         * checked out. An idle member is checked once {@code interval} less a random
+         * amount up to {@code jitter} has passed since it was last checked (or
+         * checked in). Due members are found by a periodic sweep that runs every
+         * tenth of the interval and at most
+         * {@link #maxConcurrentBackgroundHealthChecks(int)} checks run at once. Has no
+         * effect unless a health check is set. Checks on checkout (see
+         * {@link #idleTimeBeforeHealthCheck(long, TimeUnit)}) still happen so the
+         * interval would normally be shorter than idleTimeBeforeHealthCheck. If
+         * set to 0 (the default) background checks are disabled.
+         * 
+         * @param interval maximum time between checks of an idle member
+         * @param jitter   maximum random reduction of the interval, 0 or less than
+         *                 interval
+         * @param unit     unit of interval and jitter
+         * @return this
+         */
+        public Builder<T> backgroundHealthCheck(long interval, long jitter, TimeUnit unit) {
+            Preconditions.checkArgument(interval >= 0);
+            Preconditions.checkArgument(jitter == 0 || jitter > 0 && jitter < interval,
+                    "jitter must be 0 or less than interval");
+            this.backgroundHealthCheckIntervalMs = unit.toMillis(interval);
+            this.backgroundHealthCheckJitterMs = unit.toMillis(jitter);
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of background health checks (see
+         * {@link #backgroundHealthCheck(long, long, TimeUnit)}) that run at the same
+         * time. Default is 1.
+         * 
+         * @param n maximum number of concurrent background health checks
+         * @return this
+         */
+        public Builder<T> maxConcurrentBackgroundHealthChecks(int n) {
+            Preconditions.checkArgument(n > 0);
+            this.maxConcurrentBackgroundHealthChecks = n;
+            return this;
+        }
+
+        /**
+         * Sets the maximum time a member value is used for after creation. A member
+         * past its lifetime is released when checked in (or by the periodic sweep if
+         * idle) and a replacement is created straight away in the background. The
+         * lifetime of each value is shortened by a random amount up to
+         * {@code jitter} so that members created together are not all recreated at
+         * the same time. If set to 0 (the default) member values live until released
+         * for another reason.
+         * 
+         * @param duration maximum lifetime of a member value
+         * @param jitter   maximum random reduction of the lifetime, 0 or less than
+         *                 duration
+         * @param unit     unit of duration and jitter
+         * @return this
+         */
+        public Builder<T> maxLifetime(long duration, long jitter, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            Preconditions.checkArgument(jitter == 0 || jitter > 0 && jitter < duration,
+                    "jitter must be 0 or less than duration");
+            this.maxLifetimeMs = unit.toMillis(duration);
+            this.maxLifetimeJitterMs = unit.toMillis(jitter);
+            return this;
+        }
+
+        /**
+         * Enables detection of members that are not checked in. A member checked out
+         * for longer than the threshold is reported once by a periodic sweep (every
+         * tenth of the threshold) with a warning log and
+         * {@link PoolMetrics#recordLeak()}. If set to 0 (the default) leak detection
+         * is disabled and costs nothing.
+         * 
+         * @param duration time after which a checked out member is reported
+         * @param unit     unit of the duration
+         * @return this
+         */
+        public Builder<T> leakDetectionThreshold(long duration, TimeUnit unit) {
+            Preconditions.checkArgument(duration >= 0);
+            this.leakDetectionThresholdMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets how often the stack trace of a checkout is captured for the leak
+         * report (see {@link #leakDetectionThreshold(long, TimeUnit)}). A stack
+         * trace is captured for a random one in {@code n} checkouts so that the cost
+         * is negligible in production. If 1 then every checkout is captured and if 0
+         * none is. Default is 100.
+         * 
+         * @param n one in n checkouts capture a stack trace
+         * @return this
+         */
+        public Builder<T> leakStackTraceSampling(int n) {
+            Preconditions.checkArgument(n >= 0);
+            this.leakStackTraceSampling = n;
+            return this;
+        }
+
+        /**
+         * Sets whether a leaked member (see
+         * {@link #leakDetectionThreshold(long, TimeUnit)}) is reclaimed when reported.
+         * The value of a reclaimed member is disposed and the pool creates a
+         * replacement. A later checkin of the reclaimed member is ignored. Default is
+         * false.
+         * 
+         * @param reclaim true to reclaim leaked members
+         * @return this
+         */
+        public Builder<T> reclaimLeakedMembers(boolean reclaim) {
+            this.reclaimLeakedMembers = reclaim;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of subscribers that can be waiting for a member. A
+         * subscriber that would exceed this number is failed immediately with a
+         * {@link PoolExhaustedException}. Default is unbounded.
+         * 
+         * <p>
+         * The stripes of a {@link StripedNonBlockingPool} share the limit like they
+         * share maxSize (but each stripe allows at least one waiting subscriber).
+         * Waiting subscribers are spread over the stripes in round-robin order so a
+         * subscriber may be failed shortly before the limit is reached across the
+         * whole pool.
+         * 
+         * @param maxPendingAcquires maximum number of waiting subscribers
+         * @return this
+         */
+        public Builder<T> maxPendingAcquires(int maxPendingAcquires) {
+            Preconditions.checkArgument(maxPendingAcquires > 0);
+            this.maxPendingAcquires = maxPendingAcquires;
+            return this;
+        }
+
+        /**
+         * Sets the waiting time that is worth one unit of priority when choosing the
+         * next subscriber to {@link NonBlockingPool#member(int)} to emit to. For
+         * example with an interval of 1s a priority 0 subscriber that has waited 3s is
+         * emitted to before a priority 2 subscriber that has just arrived. Default is
+         * 1s.
+         * 
+         * @param duration waiting time worth one unit of priority
+         * @param unit     unit of the duration
+         * @return this
+         */
+        public Builder<T> priorityAgingInterval(long duration, TimeUnit unit) {
+            Preconditions.checkNotNull(unit);
+            Preconditions.checkArgument(unit.toMillis(duration) > 0, "priorityAgingInterval must be at least 1ms");
+            this.priorityAgingIntervalMs = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the order in which waiting subscribers are emitted to. Default is
+         * {@link Fairness#PRIORITY}. For a pool built with
+         * {@link #buildStriped(int)} the order applies within each stripe only.
+         * 
+         * @param fairness order in which waiting subscribers are emitted to
+         * @return this
+         */
+        public Builder<T> fairness(Fairness fairness) {
+            Preconditions.checkNotNull(fairness);
+            this.fairness = fairness;
+            return this;
+        }
+
+        /**
+         * Sets the largest maxSize that the pool can be given by
+         * {@link NonBlockingPool#reconfigure()}. Storage for this many members is
+         * allocated when the pool is first used. Default is maxSize (no growth). The
+         * stripes of a {@link StripedNonBlockingPool} share the limit like they share
+         * maxSize.
+         * 
+         * @param maxSizeLimit largest maxSize, at least maxSize
+         * @return this
+         */
+        public Builder<T> maxSizeLimit(int maxSizeLimit) {
+            Preconditions.checkArgument(maxSizeLimit > 0);
+            this.maxSizeLimit = maxSizeLimit;
+            return this;
+        }
+
+        /**
+         * Sets a controller that periodically chooses the size of the pool (between
+         * max(1, minIdle) and maxSizeLimit) from measurements of its recent use, for
+         * example {@link SizeController#aimd(long, TimeUnit)}. The pool starts with
+         * maxSize members. The size may also be changed by
+         * {@link NonBlockingPool#reconfigure()} until the next call to the controller.
+         * 
+         * @param controller chooses the size of the pool
+         * @param interval   time between calls to the controller
+         * @param unit       unit of the interval
+         * @return this
+         */
+        public Builder<T> sizeController(SizeController controller, long interval, TimeUnit unit) {
+            Preconditions.checkNotNull(controller);
+            Preconditions.checkNotNull(unit);
+            Preconditions.checkArgument(unit.toMillis(interval) > 0, "interval must be at least 1ms");
+            this.sizeController = controller;
+            this.sizeControlIntervalMs = unit.toMillis(interval);
+            return this;
+        }
+
+        Builder<T> budget(MemberBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        Builder<T> sweptExternally() {
+            this.sweptExternally = true;
+            return this;
+        }
+
         public NonBlockingPool<T> build() {
-            return new NonBlockingPool<T>(factory, healthCheck, disposer, maxSize, idleTimeBeforeHealthCheckMs,
-                    maxIdleTimeMs, createRetryIntervalMs, checkinDecorator, scheduler, closeAction);
+            NonBlockingPool<T> pool = new NonBlockingPool<T>(this);
+            metrics.register(pool.new Gauges());
+            return pool;
+        }
+
+        /**
+         * Builds a pool that splits maxSize across {@code stripes} independent pools
+         * to reduce contention between threads. See {@link StripedNonBlockingPool}.
+         * 
+         * @param stripes number of stripes, between 1 and maxSize inclusive
+         * @return a striped pool
+         */
+        public StripedNonBlockingPool<T> buildStriped(int stripes) {
+            Preconditions.checkArgument(stripes > 0 && stripes <= maxSize, "stripes must be between 1 and maxSize");
+            List<NonBlockingPool<T>> list = new ArrayList<>(stripes);
+            for (int i = 0; i < stripes; i++) {
+                // the close action is run once by the striped pool
+                list.add(new NonBlockingPool<T>(this, i, stripes, () -> {
+                }));
+            }
+            StripedNonBlockingPool<T> pool = new StripedNonBlockingPool<T>(list, closeAction);
+            metrics.register(pool.new Gauges());
+            return pool;
         }
 
     }
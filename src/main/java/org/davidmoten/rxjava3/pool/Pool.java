@@ -1,9 +1,103 @@
 package org.davidmoten.rxjava3.pool;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.davidmoten.rxjava3.pool.internal.CompletableUsingMember;
+import org.davidmoten.rxjava3.pool.internal.FlowableUsingMember;
+import org.davidmoten.rxjava3.pool.internal.SingleUsingMember;
+import org.reactivestreams.Publisher;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.CompletableSource;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleSource;
+import io.reactivex.rxjava3.functions.Function;
 
 public interface Pool<T> extends AutoCloseable {
 
     Single<Member<T>> member();
 
-}
\ No newline at end of file
+    /**
+     * Returns a Single that emits a member, giving precedence to higher priority
+     * subscribers when members are scarce. This default implementation ignores
+     * the priority.
+     * 
+     * @param priority priority of the checkout, 0 being the priority of
+     *                 {@link #member()}
+     * @return a Single that emits a member
+     */
+    default Single<Member<T>> member(int priority) {
+        return member();
+    }
+
+    /**
+     * Returns a Single that emits {@code n} distinct members together. This
+     * default implementation checks out the members one at a time and should be
+     * overridden by implementations that can reserve the members together (to
+     * avoid deadlock between concurrent partial acquisitions).
+     * 
+     * @param n number of members to check out
+     * @return a Single that emits a list of n members
+     */
+    default Single<List<Member<T>>> members(int n) {
+        return Flowable.range(1, n) //
+                .concatMapSingle(i -> member()) //
+                .toList();
+    }
+
+    /**
+     * Checks in all the given members (for example those emitted by
+     * {@link #members(int)}).
+     * 
+     * @param members members to check in
+     */
+    default void checkinAll(Collection<? extends Member<T>> members) {
+        for (Member<T> m : members) {
+            m.checkin();
+        }
+    }
+
+    /**
+     * Returns a Flowable that on subscription checks out a member, emits the
+     * items of the Publisher returned by {@code work} for the member's value and
+     * checks the member in when that Publisher terminates or the subscription is
+     * cancelled. The member is checked in before the terminal event is emitted
+     * downstream.
+     * 
+     * @param <R>  result type
+     * @param work the work to do with a member value
+     * @return a Flowable of the results of the work
+     */
+    default <R> Flowable<R> using(Function<? super T, ? extends Publisher<? extends R>> work) {
+        return new FlowableUsingMember<T, R>(member(), work);
+    }
+
+    /**
+     * Returns a Single that on subscription checks out a member, emits the result
+     * of the Single returned by {@code work} for the member's value and checks the
+     * member in when that Single terminates or the subscription is disposed. The
+     * member is checked in before the result is emitted downstream.
+     * 
+     * @param <R>  result type
+     * @param work the work to do with a member value
+     * @return a Single of the result of the work
+     */
+    default <R> Single<R> usingSingle(Function<? super T, ? extends SingleSource<? extends R>> work) {
+        return new SingleUsingMember<T, R>(member(), work);
+    }
+
+    /**
+     * Returns a Completable that on subscription checks out a member, runs the
+     * Completable returned by {@code work} for the member's value and checks the
+     * member in when that Completable terminates or the subscription is disposed.
+     * 
+     * @param work the work to do with a member value
+     * @return a Completable that completes when the work completes
+     */
+    default Completable usingCompletable(Function<? super T, ? extends CompletableSource> work) {
+        return new CompletableUsingMember<T>(member(), work);
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.davidmoten.rxjava3.pool;
+
+/**
+ * Emitted to a subscriber for a pool member if the maximum number of waiting
+ * subscribers (see
+ * {@link NonBlockingPool.Builder#maxPendingAcquires(int)}) has been reached.
+ */
+public final class PoolExhaustedException extends RuntimeException {
+
+    private static final long serialVersionUID = 2857143958349526101L;
+
+    public PoolExhaustedException(int maxPendingAcquires) {
+        super("maxPendingAcquires reached: " + maxPendingAcquires);
+    }
+
+}
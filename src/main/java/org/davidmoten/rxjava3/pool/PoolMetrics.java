@@ -0,0 +1,127 @@
+package org.davidmoten.rxjava3.pool;
+
+/**
+ * Receives measurements from a {@link NonBlockingPool}. All methods have empty
+ * default implementations so implement only those of interest. Durations are
+ * in nanoseconds (measured with {@link System#nanoTime()}).
+ *
+ * <p>
+ * Methods are called on the pool's hot paths (and possibly concurrently) so
+ * should be fast, non-blocking and should not throw. When no metrics are set
+ * (see {@link NonBlockingPool.Builder#metrics(PoolMetrics)}) nothing is
+ * measured.
+ */
+public interface PoolMetrics {
+
+    /**
+     * Metrics that record nothing (the default).
+     */
+    PoolMetrics NONE = new PoolMetrics() {
+    };
+
+    /**
+     * Called once when the pool is built with gauges that can be polled for the
+     * current state of the pool (summed over the stripes of a
+     * {@link StripedNonBlockingPool}).
+     *
+     * @param gauges current state of the pool
+     */
+    default void register(Gauges gauges) {
+    }
+
+    /**
+     * Records the time from subscription to {@link Pool#member()} (or
+     * {@link Pool#members(int)}) to emission of the member(s).
+     *
+     * @param nanos wait time
+     */
+    default void recordWaitTime(long nanos) {
+    }
+
+    /**
+     * Records the time from emission of a member to its checkin.
+     *
+     * @param nanos hold time
+     */
+    default void recordHoldTime(long nanos) {
+    }
+
+    /**
+     * Records the time taken to successfully create a member value.
+     *
+     * @param nanos creation time
+     */
+    default void recordCreateTime(long nanos) {
+    }
+
+    /**
+     * Records a failed attempt to create a member value.
+     */
+    default void recordCreateFailure() {
+    }
+
+    /**
+     * Records a completed health check.
+     *
+     * @param nanos   health check duration
+     * @param healthy result of the health check
+     */
+    default void recordHealthCheck(long nanos, boolean healthy) {
+    }
+
+    /**
+     * Records the release of a member value by the pool while the pool is open.
+     * A value is released when it has been idle for longer than maxIdleTime, when
+     * it is surplus to a reduced maxSize, when it is evicted to make room for
+     * another key of a {@link KeyedPool}, when it is past its maxLifetime or when
+     * it is reclaimed as a leak. Values disposed after a failed health check
+     * (see {@link #recordHealthCheck(long, boolean)}) or when the pool is closed
+     * are not recorded here.
+     */
+    default void recordRelease() {
+    }
+
+    /**
+     * Records a member that has been checked out for longer than the leak
+     * detection threshold (see
+     * {@link NonBlockingPool.Builder#leakDetectionThreshold(long, java.util.concurrent.TimeUnit)}).
+     */
+    default void recordLeak() {
+    }
+
+    /**
+     * The current state of a pool. Values are read without synchronization so are
+     * approximate if the pool is in use.
+     */
+    interface Gauges {
+
+        /**
+         * Returns the number of members checked out.
+         *
+         * @return number of members checked out
+         */
+        int inUse();
+
+        /**
+         * Returns the number of initialized members available for checkout.
+         *
+         * @return number of idle members
+         */
+        int idle();
+
+        /**
+         * Returns the number of members being created.
+         *
+         * @return number of members being created
+         */
+        int initializing();
+
+        /**
+         * Returns the number of subscribers waiting for a member.
+         *
+         * @return number of waiting subscribers
+         */
+        int waiting();
+    }
+
+}
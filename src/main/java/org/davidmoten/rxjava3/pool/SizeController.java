@@ -0,0 +1,186 @@
+package org.davidmoten.rxjava3.pool;
+
+import java.util.concurrent.TimeUnit;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Chooses the size of a {@link NonBlockingPool} from measurements of its recent
+ * use. Called periodically on the pool's scheduler (see
+ * {@link NonBlockingPool.Builder#sizeController(SizeController, long, TimeUnit)})
+ * and serialized with the other operations of the pool so should be fast and
+ * non-blocking.
+ */
+public interface SizeController {
+
+    /**
+     * Returns the size the pool should have. The returned value is clamped to
+     * between {@link Sample#minSize()} and {@link Sample#maxSize()}.
+     * 
+     * @param sample measurements since the last call
+     * @return the new size of the pool
+     */
+    int size(Sample sample);
+
+    /**
+     * Returns an additive-increase multiplicative-decrease controller that grows
+     * the pool by one member whenever subscribers are waiting or the mean wait for
+     * a member exceeds {@code targetWaitTime}, and shrinks the pool to 3/4 of its
+     * size (rounded down but not below the number of members in use) whenever less
+     * than half of the members are in use.
+     * 
+     * @param targetWaitTime mean wait time above which the pool grows
+     * @param unit           unit of targetWaitTime
+     * @return an AIMD size controller
+     */
+    static SizeController aimd(long targetWaitTime, TimeUnit unit) {
+        return aimd(targetWaitTime, unit, 1, 0.75, 0.5);
+    }
+
+    /**
+     * Returns an additive-increase multiplicative-decrease controller.
+     * 
+     * @param targetWaitTime    mean wait time above which the pool grows
+     * @param unit              unit of targetWaitTime
+     * @param increase          number of members added when growing
+     * @param decreaseFactor    factor the size is multiplied by when shrinking,
+     *                          between 0 and 1 exclusive
+     * @param lowUtilization    fraction of members in use below which the pool
+     *                          shrinks, between 0 and 1 inclusive
+     * @return an AIMD size controller
+     */
+    static SizeController aimd(long targetWaitTime, TimeUnit unit, int increase, double decreaseFactor,
+            double lowUtilization) {
+        Preconditions.checkArgument(targetWaitTime >= 0);
+        Preconditions.checkNotNull(unit);
+        Preconditions.checkArgument(increase > 0, "increase must be >0");
+        Preconditions.checkArgument(decreaseFactor > 0 && decreaseFactor < 1,
+                "decreaseFactor must be between 0 and 1 exclusive");
+        Preconditions.checkArgument(lowUtilization >= 0 && lowUtilization <= 1,
+                "lowUtilization must be between 0 and 1 inclusive");
+        long targetWaitTimeMs = unit.toMillis(targetWaitTime);
+        return sample -> {
+            int size = sample.size();
+            if (sample.waiting() > 0 || sample.meanWaitTimeMs() > targetWaitTimeMs) {
+                return size + increase;
+            } else if (sample.inUse() < size * lowUtilization) {
+                return Math.max(sample.inUse(), (int) (size * decreaseFactor));
+            } else {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Measurements of a pool since the last call to
+     * {@link SizeController#size(Sample)}. Times are measured with the pool's
+     * scheduler.
+     */
+    final class Sample {
+
+        private final int size;
+        private final int minSize;
+        private final int maxSize;
+        private final int inUse;
+        private final int waiting;
+        private final int checkouts;
+        private final long meanWaitTimeMs;
+        private final long maxWaitTimeMs;
+
+        Sample(int size, int minSize, int maxSize, int inUse, int waiting, int checkouts, long meanWaitTimeMs,
+                long maxWaitTimeMs) {
+            this.size = size;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+            this.inUse = inUse;
+            this.waiting = waiting;
+            this.checkouts = checkouts;
+            this.meanWaitTimeMs = meanWaitTimeMs;
+            this.maxWaitTimeMs = maxWaitTimeMs;
+        }
+
+        /**
+         * Returns the current size of the pool.
+         * 
+         * @return current size
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Returns the smallest size the pool can have (at least 1 and minIdle).
+         * 
+         * @return smallest size
+         */
+        public int minSize() {
+            return minSize;
+        }
+
+        /**
+         * Returns the largest size the pool can have (maxSizeLimit).
+         * 
+         * @return largest size
+         */
+        public int maxSize() {
+            return maxSize;
+        }
+
+        /**
+         * Returns the number of members checked out now.
+         * 
+         * @return number of members in use
+         */
+        public int inUse() {
+            return inUse;
+        }
+
+        /**
+         * Returns the number of subscribers waiting for a member now.
+         * 
+         * @return number of waiting subscribers
+         */
+        public int waiting() {
+            return waiting;
+        }
+
+        /**
+         * Returns the number of members emitted since the last sample.
+         * 
+         * @return number of checkouts
+         */
+        public int checkouts() {
+            return checkouts;
+        }
+
+        /**
+         * Returns the mean time spent waiting for a member since the last sample by
+         * the subscribers that waited in that period, whether they have been emitted
+         * to or are still waiting (0 if none). Waiting before the last sample is not
+         * included because it was counted in that sample.
+         * 
+         * @return mean wait time in ms
+         */
+        public long meanWaitTimeMs() {
+            return meanWaitTimeMs;
+        }
+
+        /**
+         * Returns the longest time spent waiting for a member since the last sample
+         * by one subscriber (0 if none), measured as for {@link #meanWaitTimeMs()}.
+         * 
+         * @return maximum wait time in ms
+         */
+        public long maxWaitTimeMs() {
+            return maxWaitTimeMs;
+        }
+
+        @Override
+        public String toString() {
+            return "Sample [size=" + size + ", minSize=" + minSize + ", maxSize=" + maxSize + ", inUse=" + inUse
+                    + ", waiting=" + waiting + ", checkouts=" + checkouts + ", meanWaitTimeMs=" + meanWaitTimeMs
+                    + ", maxWaitTimeMs=" + maxWaitTimeMs + "]";
+        }
+    }
+
+}
@@ -0,0 +1,356 @@
+package org.davidmoten.rxjava3.pool;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleObserver;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.functions.Action;
+import io.reactivex.rxjava3.internal.disposables.DisposableHelper;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+/**
+ * A pool made up of a number of independent {@link NonBlockingPool} stripes
+ * that share the configured maxSize between them. Each stripe has its own drain
+ * loop so checkouts on different threads contend less than they would on a
+ * single {@link NonBlockingPool}.
+ * 
+ * <p>
+ * A checkout first tries the stripe associated with the current thread then
+ * steals an idle member from the other stripes. If no stripe has an idle member
+ * the checkout waits on a stripe chosen in round-robin order so that the
+ * capacity of every stripe is used. While it waits, a stripe that has an idle
+ * member and nothing waiting of its own hands the member to the longest waiting
+ * subscriber of the other stripes. A member is always checked in to the stripe
+ * it came from.
+ * 
+ * <p>
+ * Build with {@link NonBlockingPool.Builder#buildStriped(int)}.
+ *
+ * @param <T> member type
+ */
+public final class StripedNonBlockingPool<T> implements Pool<T> {
+
+    private final NonBlockingPool<T>[] stripes;
+    private final Action closeAction;
+    private final Single<Member<T>> member;
+    private final AtomicInteger next = new AtomicInteger();
+
+    // subscribers waiting on a stripe (oldest first) that can also be served by
+    // another stripe that has an idle member. Served and disposed waiters are
+    // removed lazily.
+    private final Deque<Waiter> waiters = new ConcurrentLinkedDeque<>();
+
+    // the maximum number of members that can be checked out together by
+    // members(n)
+    private final int minStripeSize;
+
+    private volatile boolean closed;
+
+    @SuppressWarnings("unchecked")
+    StripedNonBlockingPool(List<NonBlockingPool<T>> stripes, Action closeAction) {
+        Preconditions.checkArgument(!stripes.isEmpty(), "stripes cannot be empty");
+        Preconditions.checkNotNull(closeAction);
+        this.stripes = stripes.toArray(new NonBlockingPool[0]);
+        this.closeAction = closeAction;
+        this.member = new StripedMemberSingle(0);
+        int min = Integer.MAX_VALUE;
+        for (NonBlockingPool<T> p : stripes) {
+            min = Math.min(min, p.maxSize);
+            p.idleListener = new Thief(p);
+        }
+        this.minStripeSize = min;
+    }
+
+    @Override
+    public Single<Member<T>> member() {
+        return member;
+    }
+
+    /**
+     * Returns a Single that emits a member like {@link #member()} except that a
+     * subscriber that has to wait is prioritized on the stripe it waits on (see
+     * {@link NonBlockingPool#member(int)}).
+     * 
+     * @param priority priority of the checkout, 0 is the priority of
+     *                 {@link #member()}
+     * @return a Single that emits a member
+     */
+    @Override
+    public Single<Member<T>> member(int priority) {
+        if (priority == 0) {
+            return member;
+        } else {
+            return new StripedMemberSingle(priority);
+        }
+    }
+
+    /**
+     * Returns a Single that emits {@code n} distinct members together from one
+     * stripe (see {@link NonBlockingPool#members(int)}).
+     * 
+     * @param n number of members, between 1 and the smallest stripe size inclusive
+     * @return a Single that emits a list of n members
+     */
+    @Override
+    public Single<List<Member<T>>> members(int n) {
+        Preconditions.checkArgument(n > 0 && n <= minStripeSize,
+                "n must be between 1 and the size of the smallest stripe");
+        return nextStripe().members(n);
+    }
+
+    /**
+     * Returns a Completable that warms up every stripe (see
+     * {@link NonBlockingPool#warmup(int)}).
+     * 
+     * @param maxConcurrency maximum number of members created concurrently per
+     *                       stripe
+     * @return a Completable that completes when every stripe has its share of
+     *         minIdle members initialized
+     */
+    public Completable warmup(int maxConcurrency) {
+        List<Completable> list = new ArrayList<>(stripes.length);
+        for (NonBlockingPool<T> p : stripes) {
+            list.add(p.warmup(maxConcurrency));
+        }
+        return Completable.merge(list);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        for (NonBlockingPool<T> p : stripes) {
+            p.close();
+        }
+        try {
+            closeAction.run();
+        } catch (Throwable e) {
+            RxJavaPlugins.onError(e);
+        }
+    }
+
+    private NonBlockingPool<T> nextStripe() {
+        return stripes[Math.floorMod(next.getAndIncrement(), stripes.length)];
+    }
+
+    private int homeStripe() {
+        return (int) (Thread.currentThread().getId() % stripes.length);
+    }
+
+    private final class StripedMemberSingle extends Single<Member<T>> {
+
+        private final int priority;
+
+        StripedMemberSingle(int priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        protected void subscribeActual(SingleObserver<? super Member<T>> observer) {
+            if (!closed) {
+                int home = homeStripe();
+                for (int i = 0; i < stripes.length; i++) {
+                    if (stripes[(home + i) % stripes.length].trySubscribeAvailable(observer)) {
+                        return;
+                    }
+                }
+            }
+            if (closed) {
+                // the stripe emits the error
+                nextStripe().member(priority).subscribe(observer);
+                return;
+            }
+            // no idle member anywhere so wait
+            Waiter w = new Waiter(observer);
+            observer.onSubscribe(w);
+            removeDoneWaiters();
+            waiters.offer(w);
+            nextStripe().member(priority).subscribe(w);
+        }
+    }
+
+    private void removeDoneWaiters() {
+        Waiter w;
+        while ((w = waiters.peekFirst()) != null && w.get()) {
+            waiters.removeFirstOccurrence(w);
+        }
+    }
+
+    // a subscriber waiting on one stripe that is served by whichever of that stripe
+    // or a stealing stripe emits a member first (true once served or disposed)
+    private final class Waiter extends AtomicBoolean implements SingleObserver<Member<T>>, Disposable {
+
+        private static final long serialVersionUID = -1882413620651353574L;
+
+        private final SingleObserver<? super Member<T>> downstream;
+
+        // the subscription to the stripe waited on
+        private final AtomicReference<Disposable> upstream = new AtomicReference<>();
+
+        Waiter(SingleObserver<? super Member<T>> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+            DisposableHelper.setOnce(upstream, d);
+        }
+
+        @Override
+        public void onSuccess(Member<T> m) {
+            if (compareAndSet(false, true)) {
+                downstream.onSuccess(m);
+            } else {
+                // already served by another stripe
+                m.checkin();
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            if (compareAndSet(false, true)) {
+                downstream.onError(e);
+            } else {
+                RxJavaPlugins.onError(e);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            if (compareAndSet(false, true)) {
+                DisposableHelper.dispose(upstream);
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return get();
+        }
+
+        // returns true if the stripe emitted an idle member to this waiter (or
+        // back to the stripe if this waiter was served meanwhile). Called by a
+        // scheduled steal so that the waiter is emitted to on the scheduler.
+        boolean steal(NonBlockingPool<T> stripe) {
+            return stripe.trySubscribeAvailableOnScheduler(new SingleObserver<Member<T>>() {
+
+                @Override
+                public void onSubscribe(Disposable d) {
+                    // the member is emitted straight away
+                }
+
+                @Override
+                public void onSuccess(Member<T> m) {
+                    if (compareAndSet(false, true)) {
+                        // stop waiting on the other stripe
+                        DisposableHelper.dispose(upstream);
+                        downstream.onSuccess(m);
+                    } else {
+                        m.checkin();
+                    }
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    RxJavaPlugins.onError(e);
+                }
+            });
+        }
+    }
+
+    // called by the drain loop of a stripe when the stripe has idle members and
+    // nothing waiting (true while a steal is scheduled)
+    private final class Thief extends AtomicBoolean implements Runnable {
+
+        private static final long serialVersionUID = 2919513963839125706L;
+
+        private final NonBlockingPool<T> stripe;
+
+        // allocated once rather than per scheduled steal
+        private final Runnable stealTask = this::steal;
+
+        Thief(NonBlockingPool<T> stripe) {
+            this.stripe = stripe;
+        }
+
+        @Override
+        public void run() {
+            // otherwise served and disposed waiters at the head of the queue would
+            // schedule steals that find nobody to serve
+            removeDoneWaiters();
+            if (!waiters.isEmpty() && compareAndSet(false, true)) {
+                // the stripe's drain loop is running on this thread so its idle
+                // members cannot be taken until later
+                stripe.scheduler.scheduleDirect(stealTask);
+            }
+        }
+
+        private void steal() {
+            set(false);
+            Waiter w;
+            while (!closed && (w = waiters.pollFirst()) != null) {
+                if (!w.get() && !w.steal(stripe)) {
+                    // nothing idle on this stripe any more
+                    waiters.offerFirst(w);
+                    return;
+                }
+            }
+        }
+    }
+
+    final class Gauges implements PoolMetrics.Gauges {
+
+        private final List<PoolMetrics.Gauges> gauges = new ArrayList<>(stripes.length);
+
+        Gauges() {
+            for (NonBlockingPool<T> p : stripes) {
+                gauges.add(p.new Gauges());
+            }
+        }
+
+        @Override
+        public int inUse() {
+            int n = 0;
+            for (PoolMetrics.Gauges g : gauges) {
+                n += g.inUse();
+            }
+            return n;
+        }
+
+        @Override
+        public int idle() {
+            int n = 0;
+            for (PoolMetrics.Gauges g : gauges) {
+                n += g.idle();
+            }
+            return n;
+        }
+
+        @Override
+        public int initializing() {
+            int n = 0;
+            for (PoolMetrics.Gauges g : gauges) {
+                n += g.initializing();
+            }
+            return n;
+        }
+
+        @Override
+        public int waiting() {
+            int n = 0;
+            for (PoolMetrics.Gauges g : gauges) {
+                n += g.waiting();
+            }
+            return n;
+        }
+    }
+
+}
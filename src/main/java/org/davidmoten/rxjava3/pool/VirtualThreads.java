@@ -0,0 +1,57 @@
+package org.davidmoten.rxjava3.pool;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+
+final class VirtualThreads {
+
+    private VirtualThreads() {
+        // prevent instantiation
+    }
+
+    static final class SchedulerHolder {
+
+        private SchedulerHolder() {
+            // prevent instantiation
+        }
+
+        // null if virtual threads are not supported by the runtime. The executor
+        // starts a new virtual thread per task so holds no threads while idle and is
+        // never shut down.
+        static final Scheduler value = createScheduler();
+
+        private static Scheduler createScheduler() {
+            try {
+                // looked up reflectively so that this library still builds and runs on
+                // Java 8
+                ExecutorService executor = (ExecutorService) Executors.class //
+                        .getMethod("newVirtualThreadPerTaskExecutor") //
+                        .invoke(null);
+                return Schedulers.from(executor);
+            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Returns a scheduler that runs each task on a new virtual thread.
+     *
+     * @return virtual thread scheduler
+     * @throws UnsupportedOperationException if the runtime does not support
+     *                                       virtual threads (Java 21 or later is
+     *                                       required)
+     */
+    static Scheduler scheduler() {
+        Scheduler s = SchedulerHolder.value;
+        if (s == null) {
+            throw new UnsupportedOperationException("virtual threads require Java 21 or later");
+        }
+        return s;
+    }
+
+}
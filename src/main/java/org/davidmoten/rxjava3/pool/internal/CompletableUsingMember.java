@@ -0,0 +1,156 @@
+package org.davidmoten.rxjava3.pool.internal;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.davidmoten.rxjava3.pool.Member;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.CompletableObserver;
+import io.reactivex.rxjava3.core.CompletableSource;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleObserver;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.internal.disposables.DisposableHelper;
+
+/**
+ * Checks out a member, applies {@code work} to its value and checks the member
+ * in again when the work terminates or the subscriber disposes.
+ *
+ * @param <T> member value type
+ */
+public final class CompletableUsingMember<T> extends Completable {
+
+    private final Single<? extends Member<T>> member;
+    private final Function<? super T, ? extends CompletableSource> work;
+
+    public CompletableUsingMember(Single<? extends Member<T>> member,
+            Function<? super T, ? extends CompletableSource> work) {
+        this.member = member;
+        this.work = work;
+    }
+
+    @Override
+    protected void subscribeActual(CompletableObserver observer) {
+        UsingObserver<T> o = new UsingObserver<T>(observer, work);
+        observer.onSubscribe(o);
+        member.subscribe(o);
+    }
+
+    static final class UsingObserver<T> extends AtomicReference<Disposable>
+            implements SingleObserver<Member<T>>, CompletableObserver, Disposable {
+
+        private static final long serialVersionUID = 1496386540129540484L;
+
+        // the states are as for SingleUsingMember.UsingObserver
+        private static final int WAITING = 0;
+        private static final int STARTING = 1;
+        private static final int RUNNING = 2;
+        private static final int DISPOSED_STARTING = 3;
+        private static final int DONE = 4;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<UsingObserver> STATE = AtomicIntegerFieldUpdater
+                .newUpdater(UsingObserver.class, "state");
+
+        private final CompletableObserver downstream;
+        private final Function<? super T, ? extends CompletableSource> work;
+
+        // the thread that moves state from STARTING, RUNNING or DISPOSED_STARTING to
+        // DONE checks the member in
+        private volatile int state;
+
+        // published by the write to state in onSuccess
+        private Member<T> member;
+
+        UsingObserver(CompletableObserver downstream, Function<? super T, ? extends CompletableSource> work) {
+            this.downstream = downstream;
+            this.work = work;
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+            // replace rather than set because the subscription to the pool is
+            // superseded by the subscription to the work
+            DisposableHelper.replace(this, d);
+        }
+
+        @Override
+        public void onSuccess(Member<T> m) {
+            member = m;
+            if (!STATE.compareAndSet(this, WAITING, STARTING)) {
+                // disposed while the member was being emitted
+                m.checkin();
+                return;
+            }
+            CompletableSource source;
+            try {
+                source = Objects.requireNonNull(work.apply(m.value()), "work returned a null CompletableSource");
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                checkin();
+                downstream.onError(e);
+                return;
+            }
+            source.subscribe(this);
+            if (!STATE.compareAndSet(this, STARTING, RUNNING) && STATE.compareAndSet(this, DISPOSED_STARTING, DONE)) {
+                m.checkin();
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            checkin();
+            downstream.onComplete();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            checkin();
+            downstream.onError(e);
+        }
+
+        @Override
+        public void dispose() {
+            DisposableHelper.dispose(this);
+            while (true) {
+                int s = state;
+                if (s == WAITING) {
+                    if (STATE.compareAndSet(this, WAITING, DONE)) {
+                        return;
+                    }
+                } else if (s == STARTING) {
+                    // the work is being given the member value so leave the
+                    // checkin to onSuccess
+                    if (STATE.compareAndSet(this, STARTING, DISPOSED_STARTING)) {
+                        return;
+                    }
+                } else if (s == RUNNING) {
+                    if (STATE.compareAndSet(this, RUNNING, DONE)) {
+                        member.checkin();
+                    }
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return DisposableHelper.isDisposed(get());
+        }
+
+        // called when the work terminates
+        private void checkin() {
+            int s = STATE.getAndSet(this, DONE);
+            if (s != WAITING && s != DONE) {
+                member.checkin();
+            }
+        }
+    }
+
+}
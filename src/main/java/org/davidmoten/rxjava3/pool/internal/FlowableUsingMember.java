@@ -0,0 +1,215 @@
+package org.davidmoten.rxjava3.pool.internal;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.davidmoten.rxjava3.pool.Member;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.FlowableSubscriber;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleObserver;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.internal.disposables.DisposableHelper;
+import io.reactivex.rxjava3.internal.subscriptions.SubscriptionHelper;
+import io.reactivex.rxjava3.internal.util.BackpressureHelper;
+
+/**
+ * Checks out a member, emits the items of the Publisher returned by applying
+ * {@code work} to its value and checks the member in again when that
+ * Publisher terminates or the subscriber cancels. Requests made before the
+ * member is available are passed on to the Publisher when it is subscribed.
+ *
+ * @param <T> member value type
+ * @param <R> result type
+ */
+public final class FlowableUsingMember<T, R> extends Flowable<R> {
+
+    private final Single<? extends Member<T>> member;
+    private final Function<? super T, ? extends Publisher<? extends R>> work;
+
+    public FlowableUsingMember(Single<? extends Member<T>> member,
+            Function<? super T, ? extends Publisher<? extends R>> work) {
+        this.member = member;
+        this.work = work;
+    }
+
+    @Override
+    protected void subscribeActual(Subscriber<? super R> subscriber) {
+        UsingSubscriber<T, R> s = new UsingSubscriber<T, R>(subscriber, work);
+        subscriber.onSubscribe(s);
+        member.subscribe(s);
+    }
+
+    static final class UsingSubscriber<T, R> extends AtomicReference<Subscription>
+            implements SingleObserver<Member<T>>, FlowableSubscriber<R>, Subscription {
+
+        private static final long serialVersionUID = 5512424165617584396L;
+
+        // the states are as for SingleUsingMember.UsingObserver
+        private static final int WAITING = 0;
+        private static final int STARTING = 1;
+        private static final int RUNNING = 2;
+        private static final int DISPOSED_STARTING = 3;
+        private static final int DONE = 4;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<UsingSubscriber> STATE = AtomicIntegerFieldUpdater
+                .newUpdater(UsingSubscriber.class, "state");
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicLongFieldUpdater<UsingSubscriber> REQUESTED = AtomicLongFieldUpdater
+                .newUpdater(UsingSubscriber.class, "requested");
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<UsingSubscriber, Disposable> MEMBER_SUBSCRIPTION = //
+                AtomicReferenceFieldUpdater.newUpdater(UsingSubscriber.class, Disposable.class, "memberSubscription");
+
+        private final Subscriber<? super R> downstream;
+        private final Function<? super T, ? extends Publisher<? extends R>> work;
+
+        // the thread that moves state from STARTING, RUNNING or DISPOSED_STARTING to
+        // DONE checks the member in
+        private volatile int state;
+
+        // requests made before the work is subscribed
+        private volatile long requested;
+
+        private volatile Disposable memberSubscription;
+
+        // published by the write to state in onSuccess
+        private Member<T> member;
+
+        UsingSubscriber(Subscriber<? super R> downstream,
+                Function<? super T, ? extends Publisher<? extends R>> work) {
+            this.downstream = downstream;
+            this.work = work;
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+            if (!MEMBER_SUBSCRIPTION.compareAndSet(this, null, d)) {
+                // cancelled
+                d.dispose();
+            }
+        }
+
+        @Override
+        public void onSuccess(Member<T> m) {
+            member = m;
+            if (!STATE.compareAndSet(this, WAITING, STARTING)) {
+                // cancelled while the member was being emitted
+                m.checkin();
+                return;
+            }
+            Publisher<? extends R> source;
+            try {
+                source = Objects.requireNonNull(work.apply(m.value()), "work returned a null Publisher");
+            } catch (Throwable e) {
+                Exceptions.throwIfFatal(e);
+                checkin();
+                downstream.onError(e);
+                return;
+            }
+            source.subscribe(this);
+            if (!STATE.compareAndSet(this, STARTING, RUNNING) && STATE.compareAndSet(this, DISPOSED_STARTING, DONE)) {
+                m.checkin();
+            }
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            if (SubscriptionHelper.setOnce(this, s)) {
+                long r = REQUESTED.getAndSet(this, 0L);
+                if (r != 0L) {
+                    s.request(r);
+                }
+            }
+        }
+
+        @Override
+        public void onNext(R t) {
+            downstream.onNext(t);
+        }
+
+        @Override
+        public void onComplete() {
+            checkin();
+            downstream.onComplete();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            checkin();
+            downstream.onError(e);
+        }
+
+        @Override
+        public void request(long n) {
+            Subscription s = get();
+            if (s != null) {
+                s.request(n);
+            } else if (SubscriptionHelper.validate(n)) {
+                long r;
+                do {
+                    r = requested;
+                } while (!REQUESTED.compareAndSet(this, r, BackpressureHelper.addCap(r, n)));
+                // the work may have been subscribed in the meantime
+                s = get();
+                if (s != null) {
+                    r = REQUESTED.getAndSet(this, 0L);
+                    if (r != 0L) {
+                        s.request(r);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            SubscriptionHelper.cancel(this);
+            Disposable d = MEMBER_SUBSCRIPTION.getAndSet(this, DisposableHelper.DISPOSED);
+            if (d != null) {
+                d.dispose();
+            }
+            while (true) {
+                int s = state;
+                if (s == WAITING) {
+                    if (STATE.compareAndSet(this, WAITING, DONE)) {
+                        return;
+                    }
+                } else if (s == STARTING) {
+                    // the work is being given the member value so leave the
+                    // checkin to onSuccess
+                    if (STATE.compareAndSet(this, STARTING, DISPOSED_STARTING)) {
+                        return;
+                    }
+                } else if (s == RUNNING) {
+                    if (STATE.compareAndSet(this, RUNNING, DONE)) {
+                        member.checkin();
+                    }
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        // called when the work terminates
+        private void checkin() {
+            int s = STATE.getAndSet(this, DONE);
+            if (s != WAITING && s != DONE) {
+                member.checkin();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.davidmoten.rxjava3.pool.internal;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Thread-safe Last-In-First-Out queue of the indexes {@code 0..capacity-1}
+ * (typically indexes into a fixed array of items held elsewhere). The links
+ * between queued indexes are held in a preallocated array so neither
+ * {@link #offer(int)} nor {@link #poll()} allocate.
+ *
+ * <p>
+ * The head index is held together with a stamp that is incremented on every
+ * change in a single {@link AtomicLong} so that the stack is safe from the ABA
+ * problem.
+ *
+ * <p>
+ * An index is either in the queue once or not at all. Offering an index that
+ * is already queued has no effect. An index offered while a concurrent
+ * {@link #poll()} is removing it is queued again once the poll has removed it,
+ * as if the offer had happened just after the poll.
+ */
+public final class IndexedLifoQueue {
+
+    public static final int NONE = -1;
+
+    // states of an index
+    private static final int NOT_QUEUED = 0;
+    private static final int QUEUED = 1;
+    // claimed by a poll that is removing it from the stack
+    private static final int POLLING = 2;
+    // offered while POLLING so the poll queues it again once removed
+    private static final int POLLING_OFFERED = 3;
+
+    // stamp in the upper 32 bits, head index in the lower 32 bits
+    private final AtomicLong head = new AtomicLong(pack(0, NONE));
+
+    // next[i] is the index below i in the stack (only meaningful while i is
+    // queued). Writes are published by the CAS on head.
+    private final int[] next;
+
+    // queued[i] is the state of i
+    private final AtomicIntegerArray queued;
+
+    public IndexedLifoQueue(int capacity) {
+        Preconditions.checkArgument(capacity >= 0, "capacity must be >=0");
+        this.next = new int[capacity];
+        this.queued = new AtomicIntegerArray(capacity);
+    }
+
+    /**
+     * Adds index to the top of the stack unless it is already in the queue.
+     *
+     * @param index index between 0 and capacity - 1
+     */
+    public void offer(int index) {
+        while (true) {
+            int state = queued.get(index);
+            if (state == NOT_QUEUED) {
+                if (queued.compareAndSet(index, NOT_QUEUED, QUEUED)) {
+                    push(index);
+                    return;
+                }
+            } else if (state == POLLING) {
+                // leave the push to the poll once it knows whether it removed the
+                // index
+                if (queued.compareAndSet(index, POLLING, POLLING_OFFERED)) {
+                    return;
+                }
+            } else {
+                // already queued
+                return;
+            }
+        }
+    }
+
+    // index must be claimed by the caller (QUEUED and not on the stack)
+    private void push(int index) {
+        while (true) {
+            long h = head.get();
+            next[index] = index(h);
+            if (head.compareAndSet(h, pack(stamp(h) + 1, index))) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes and returns the index at the top of the stack.
+     *
+     * @return the index at the top of the stack or {@link #NONE} if empty
+     */
+    public int poll() {
+        while (true) {
+            long h = head.get();
+            int index = index(h);
+            if (index == NONE) {
+                return NONE;
+            }
+            // claim the index so that an offer of it during the removal is not lost
+            // and so that next[index] does not change
+            if (!queued.compareAndSet(index, QUEUED, POLLING)) {
+                // being polled by another thread or already polled
+                continue;
+            }
+            // if index has been concurrently polled and offered again since head was
+            // read then the stamp will have changed so the CAS will fail
+            if (head.compareAndSet(h, pack(stamp(h) + 1, next[index]))) {
+                if (!queued.compareAndSet(index, POLLING, NOT_QUEUED)) {
+                    // offered while being removed
+                    queued.set(index, QUEUED);
+                    push(index);
+                }
+                return index;
+            } else {
+                // still queued whether or not it was offered meanwhile
+                queued.set(index, QUEUED);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return index(head.get()) == NONE;
+    }
+
+    public boolean contains(int index) {
+        return queued.get(index) != NOT_QUEUED;
+    }
+
+    public void clear() {
+        while (poll() != NONE) {
+            // keep polling
+        }
+    }
+
+    private static long pack(int stamp, int index) {
+        return ((long) stamp << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    private static int stamp(long h) {
+        return (int) (h >>> 32);
+    }
+
+    private static int index(long h) {
+        return (int) h;
+    }
+
+}
@@ -0,0 +1,172 @@
+package org.davidmoten.rxjava3.pool.internal;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.davidmoten.rxjava3.pool.Member;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.core.SingleObserver;
+import io.reactivex.rxjava3.core.SingleSource;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.exceptions.Exceptions;
+import io.reactivex.rxjava3.functions.Function;
+import io.reactivex.rxjava3.internal.disposables.DisposableHelper;
+
+/**
+ * Checks out a member, applies {@code work} to its value and checks the member
+ * in again when the result of the work terminates or the subscriber disposes.
+ * The same observer receives the member and the result of the work so no
+ * operator sits between the pool and the work.
+ *
+ * @param <T> member value type
+ * @param <R> result type
+ */
+public final class SingleUsingMember<T, R> extends Single<R> {
+
+    private final Single<? extends Member<T>> member;
+    private final Function<? super T, ? extends SingleSource<? extends R>> work;
+
+    public SingleUsingMember(Single<? extends Member<T>> member,
+            Function<? super T, ? extends SingleSource<? extends R>> work) {
+        this.member = member;
+        this.work = work;
+    }
+
+    @Override
+    protected void subscribeActual(SingleObserver<? super R> observer) {
+        UsingObserver<T, R> o = new UsingObserver<T, R>(observer, work);
+        observer.onSubscribe(o);
+        member.subscribe(o);
+    }
+
+    // Typed as an observer of Object so that it can observe both the member and
+    // the result of the work. The member is emitted first, everything after it
+    // is a result.
+    static final class UsingObserver<T, R> extends AtomicReference<Disposable>
+            implements SingleObserver<Object>, Disposable {
+
+        private static final long serialVersionUID = -5278637093312581226L;
+
+        // no member yet
+        private static final int WAITING = 0;
+        // onSuccess is applying and subscribing to the work
+        private static final int STARTING = 1;
+        // the work is subscribed
+        private static final int RUNNING = 2;
+        // disposed while STARTING, onSuccess checks the member in once the work is
+        // subscribed
+        private static final int DISPOSED_STARTING = 3;
+        // the member has been checked in or will be checked in by onSuccess (if
+        // disposed while WAITING)
+        private static final int DONE = 4;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<UsingObserver> STATE = AtomicIntegerFieldUpdater
+                .newUpdater(UsingObserver.class, "state");
+
+        private final SingleObserver<? super R> downstream;
+        private final Function<? super T, ? extends SingleSource<? extends R>> work;
+
+        // the thread that moves state from STARTING, RUNNING or DISPOSED_STARTING to
+        // DONE checks the member in
+        private volatile int state;
+
+        // published by the write to state in onSuccess
+        private Member<T> member;
+
+        UsingObserver(SingleObserver<? super R> downstream,
+                Function<? super T, ? extends SingleSource<? extends R>> work) {
+            this.downstream = downstream;
+            this.work = work;
+        }
+
+        @Override
+        public void onSubscribe(Disposable d) {
+            // replace rather than set because the subscription to the pool is
+            // superseded by the subscription to the work
+            DisposableHelper.replace(this, d);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public void onSuccess(Object value) {
+            if (member == null) {
+                Member<T> m = (Member<T>) value;
+                member = m;
+                if (!STATE.compareAndSet(this, WAITING, STARTING)) {
+                    // disposed while the member was being emitted
+                    m.checkin();
+                    return;
+                }
+                SingleSource<? extends R> source;
+                try {
+                    source = Objects.requireNonNull(work.apply(m.value()),
+                            "work returned a null SingleSource");
+                } catch (Throwable e) {
+                    Exceptions.throwIfFatal(e);
+                    checkin();
+                    downstream.onError(e);
+                    return;
+                }
+                source.subscribe(this);
+                if (!STATE.compareAndSet(this, STARTING, RUNNING)
+                        && STATE.compareAndSet(this, DISPOSED_STARTING, DONE)) {
+                    m.checkin();
+                }
+            } else {
+                // check in before emitting so that a downstream resubscription
+                // can reuse the member
+                checkin();
+                downstream.onSuccess((R) value);
+            }
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            checkin();
+            downstream.onError(e);
+        }
+
+        @Override
+        public void dispose() {
+            DisposableHelper.dispose(this);
+            while (true) {
+                int s = state;
+                if (s == WAITING) {
+                    if (STATE.compareAndSet(this, WAITING, DONE)) {
+                        return;
+                    }
+                } else if (s == STARTING) {
+                    // the work is being given the member value so leave the
+                    // checkin to onSuccess
+                    if (STATE.compareAndSet(this, STARTING, DISPOSED_STARTING)) {
+                        return;
+                    }
+                } else if (s == RUNNING) {
+                    if (STATE.compareAndSet(this, RUNNING, DONE)) {
+                        member.checkin();
+                    }
+                    return;
+                } else {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return DisposableHelper.isDisposed(get());
+        }
+
+        // called when the work terminates
+        private void checkin() {
+            int s = STATE.getAndSet(this, DONE);
+            if (s != WAITING && s != DONE) {
+                member.checkin();
+            }
+        }
+    }
+
+}
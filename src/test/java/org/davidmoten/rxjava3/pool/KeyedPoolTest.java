@@ -0,0 +1,107 @@
+package org.davidmoten.rxjava3.pool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+public class KeyedPoolTest {
+
+    @Test
+    public void testMembersAreCreatedPerKey() {
+        TestScheduler s = new TestScheduler();
+        try (KeyedPool<String, String> pool = KeyedPool //
+                .<String, String>factory(key -> key + "1") //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<String>> a = pool.member("a").test();
+            TestObserver<Member<String>> b = pool.member("b").test();
+            s.triggerActions();
+            assertEquals("a1", a.values().get(0).value());
+            assertEquals("b1", b.values().get(0).value());
+            assertEquals(2, pool.activeKeys());
+        }
+    }
+
+    @Test
+    public void testGlobalMaxSizeEvictsIdleMemberOfAnotherKey() {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        List<String> disposed = new ArrayList<>();
+        try (KeyedPool<String, String> pool = KeyedPool //
+                .<String, String>factory(key -> key + count.incrementAndGet()) //
+                .maxSize(2) //
+                .maxSizePerKey(2) //
+                .disposer(disposed::add) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<String>> a1 = pool.member("a").test();
+            TestObserver<Member<String>> a2 = pool.member("a").test();
+            s.triggerActions();
+            a1.assertValueCount(1);
+            a2.assertValueCount(1);
+            TestObserver<Member<String>> b = pool.member("b").test();
+            s.triggerActions();
+            // global limit reached and nothing idle
+            b.assertNoValues();
+            a1.values().get(0).checkin();
+            s.triggerActions();
+            // the idle member of key a is released to make room for key b
+            assertEquals(1, disposed.size());
+            b.assertValueCount(1);
+            assertEquals("b3", b.values().get(0).value());
+        }
+    }
+
+    @Test
+    public void testEmptySubPoolIsDropped() {
+        TestScheduler s = new TestScheduler();
+        try (KeyedPool<String, String> pool = KeyedPool //
+                .<String, String>factory(key -> key) //
+                .maxIdleTime(1, TimeUnit.SECONDS) //
+                .sweepInterval(1, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<String>> a = pool.member("a").test();
+            s.triggerActions();
+            a.values().get(0).checkin();
+            assertEquals(1, pool.activeKeys());
+            // first sweep releases the idle member, a later one drops the sub-pool
+            s.advanceTimeBy(3, TimeUnit.SECONDS);
+            assertEquals(0, pool.activeKeys());
+            // the key can be used again
+            TestObserver<Member<String>> a2 = pool.member("a").test();
+            s.triggerActions();
+            a2.assertValueCount(1);
+            assertEquals(1, pool.activeKeys());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxSizePerKeyGreaterThanMaxSizeThrows() {
+        KeyedPool //
+                .<String, String>factory(key -> key) //
+                .maxSize(2) //
+                .maxSizePerKey(3) //
+                .build();
+    }
+
+    @Test
+    public void testMemberAfterCloseEmitsPoolClosedException() {
+        TestScheduler s = new TestScheduler();
+        KeyedPool<String, String> pool = KeyedPool //
+                .<String, String>factory(key -> key) //
+                .scheduler(s) //
+                .build();
+        pool.close();
+        pool.member("a").test().assertError(PoolClosedException.class);
+    }
+
+}
@@ -36,7 +36,7 @@ public class MemberSingleTest {
 
                 }).build();
         MemberSingle<Integer> member = new MemberSingle<>(pool);
-        DecoratingMember<Integer> m = new DecoratingMember<>(1, (x, y) -> x, member);
+        DecoratingMember<Integer> m = new DecoratingMember<>(1, (x, y) -> x, member, 0);
 
         assertFalse(MemberSingle.shouldPerformHealthCheck(m, 0, 1000));
         // set lastCheckTime to now
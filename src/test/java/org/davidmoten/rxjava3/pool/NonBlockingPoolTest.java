@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -12,17 +13,20 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.davidmoten.rxjava3.pool.internal.FlowableSingleDeferUntilRequest;
+import org.junit.Assume;
 import org.junit.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.reactivex.rxjava3.annotations.NonNull;
 import io.reactivex.rxjava3.annotations.Nullable;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
@@ -34,6 +38,8 @@ import io.reactivex.rxjava3.observers.TestObserver;
 import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.schedulers.TestScheduler;
+import io.reactivex.rxjava3.subjects.CompletableSubject;
+import io.reactivex.rxjava3.subjects.SingleSubject;
 import io.reactivex.rxjava3.subscribers.TestSubscriber;
 
 public class NonBlockingPoolTest {
@@ -103,6 +109,75 @@ public class NonBlockingPoolTest {
         assertTrue(closed.get());
     }
     
+    @Test
+    public void testIdleMembersAreReleasedByPeriodicSweep() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(3) //
+                .maxIdleTime(1, TimeUnit.MINUTES) //
+                // close() passes the null values of released members to the
+                // disposer so only count real values
+                .disposer(n -> {
+                    if (n != null) {
+                        disposed.incrementAndGet();
+                    }
+                }) //
+                .scheduler(s) //
+                .build();
+        List<Member<Integer>> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pool.member().subscribe(m -> list.add(m));
+        }
+        s.triggerActions();
+        assertEquals(3, list.size());
+        // checkins do not schedule anything
+        list.get(0).checkin();
+        s.advanceTimeBy(10, TimeUnit.SECONDS);
+        list.get(1).checkin();
+        list.get(2).checkin();
+        s.advanceTimeBy(49, TimeUnit.SECONDS);
+        assertEquals(0, disposed.get());
+        // the sweep runs every 6 seconds
+        s.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(1, disposed.get());
+        s.advanceTimeBy(10, TimeUnit.SECONDS);
+        assertEquals(1, disposed.get());
+        s.advanceTimeBy(2, TimeUnit.SECONDS);
+        assertEquals(3, disposed.get());
+        pool.close();
+        assertEquals(3, disposed.get());
+    }
+
+    @Test
+    public void testIdleSweepDoesNotReleaseMemberInUse() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger disposed = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .maxIdleTime(10, TimeUnit.SECONDS) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .scheduler(s) //
+                .build()) {
+            pool.member().doOnSuccess(Member::checkin).test();
+            s.triggerActions();
+            // checked out again after a checkin so it has a last checkin time
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            Member<Integer> m = ts.assertValueCount(1).values().get(0);
+            s.advanceTimeBy(20, TimeUnit.SECONDS);
+            assertNotNull(m.value());
+            assertEquals(0, disposed.get());
+            m.checkin();
+            s.advanceTimeBy(12, TimeUnit.SECONDS);
+            assertEquals(1, disposed.get());
+        }
+    }
+
     @Test
     public void testConnectionPoolRecylesLastInFirstOut() throws Exception {
         AtomicInteger count = new AtomicInteger();
@@ -196,13 +271,15 @@ public class NonBlockingPoolTest {
             assertEquals(1, disposed.get());
         }
         {
-            TestSubscriber<Member<Integer>> ts = pool //
-                    .member() //
-                    .repeat() //
-                    .doOnNext(m -> m.checkin()) //
-                    .doOnNext(m -> log.debug(m.toString())) //
-                    .doOnRequest(t -> log.debug("test request=" + t)) //
-                    .test(1);
+            // repeat() would resubscribe straight away and hold the member checked
+            // out, so defer the resubscription until it is requested
+            TestSubscriber<Member<Integer>> ts = new FlowableSingleDeferUntilRequest<>(pool //
+                    .member()) //
+                            .repeat() //
+                            .doOnNext(m -> m.checkin()) //
+                            .doOnNext(m -> log.debug(m.toString())) //
+                            .doOnRequest(t -> log.debug("test request=" + t)) //
+                            .test(1);
             s.triggerActions();
             ts.assertValueCount(1);
             assertEquals(1, disposed.get());
@@ -381,6 +458,93 @@ public class NonBlockingPoolTest {
         }
     }
 
+    @Test
+    public void testIdleMemberIsEmittedDirectlyWithoutScheduling() {
+        TestScheduler s = new TestScheduler();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Member<Integer>> a = pool.member().test();
+        s.triggerActions();
+        a.assertValueCount(1);
+        a.values().get(0).checkin();
+        // no triggerActions required
+        pool.member().test().assertValueCount(1);
+    }
+
+    @Test
+    public void testIdleMemberIsEmittedViaSchedulerIfSubscribeFastPathDisabled() {
+        TestScheduler s = new TestScheduler();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .maxSubscribeEmitDepth(0) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Member<Integer>> a = pool.member().test();
+        s.triggerActions();
+        a.assertValueCount(1);
+        a.values().get(0).checkin();
+        TestObserver<Member<Integer>> b = pool.member().test();
+        b.assertNoValues();
+        s.triggerActions();
+        b.assertValueCount(1);
+    }
+
+    @Test
+    public void testDeeplyNestedDirectEmissionsDoNotOverflowStack() throws InterruptedException {
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .build();
+        pool.member().blockingGet().checkin();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger errors = new AtomicInteger();
+        checkoutRecursively(pool, new AtomicInteger(100000), latch, errors);
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+
+    private static void checkoutRecursively(Pool<Integer> pool, AtomicInteger remaining, CountDownLatch latch,
+            AtomicInteger errors) {
+        pool.member().subscribe(m -> {
+            m.checkin();
+            if (remaining.decrementAndGet() == 0) {
+                latch.countDown();
+            } else {
+                checkoutRecursively(pool, remaining, latch, errors);
+            }
+        }, e -> errors.incrementAndGet());
+    }
+
+    @Test
+    public void testWaitersAreEmittedToInOrderOfArrivalSkippingCancelled() {
+        TestScheduler s = new TestScheduler();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Member<Integer>> a = pool.member().test();
+        TestObserver<Member<Integer>> b = pool.member().test();
+        TestObserver<Member<Integer>> c = pool.member().test();
+        TestObserver<Member<Integer>> d = pool.member().test();
+        s.triggerActions();
+        a.assertValueCount(1);
+        b.assertNoValues();
+        c.dispose();
+        a.values().get(0).checkin();
+        s.triggerActions();
+        b.assertValueCount(1);
+        d.assertNoValues();
+        b.values().get(0).checkin();
+        s.triggerActions();
+        c.assertNoValues();
+        d.assertValueCount(1);
+    }
+
     @Test
     public void testMemberAvailableAfterCreationScheduledIsUsedImmediately() throws InterruptedException {
         TestScheduler ts = new TestScheduler();
@@ -540,22 +704,102 @@ public class NonBlockingPoolTest {
         assertEquals(0, errors.get());
     }
 
+    @Test
+    public void testReentrancyInDrainLoopWithDirectEmission() throws InterruptedException {
+        AtomicInteger count = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(1) //
+                .maxIdleTime(1, TimeUnit.MINUTES) //
+                .maxDirectEmitDepth(16) //
+                .build();
+        AtomicInteger errors = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        pool.member() //
+                .subscribe(m -> {
+                    // waits for the only member
+                    pool.member().subscribe(m2 -> latch.countDown());
+                    // emits to the waiting subscriber on this thread
+                    m.checkin();
+                }, e -> errors.incrementAndGet());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void testDirectEmissionToWaitingSubscriberOnCheckin() {
+        TestScheduler s = new TestScheduler();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .maxDirectEmitDepth(1) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Member<Integer>> a = pool.member().test();
+        s.triggerActions();
+        a.assertValueCount(1);
+        TestObserver<Member<Integer>> b = pool.member().test();
+        b.assertNoValues();
+        a.values().get(0).checkin();
+        // no triggerActions required
+        b.assertValueCount(1);
+    }
+
+    @Test
+    public void testDeeplyNestedCheckinsToWaitingSubscribersDoNotOverflowStack() throws InterruptedException {
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .maxDirectEmitDepth(16) //
+                .build();
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicInteger errors = new AtomicInteger();
+        checkoutChain(pool, new AtomicInteger(100000), latch, errors);
+        assertTrue(latch.await(30, TimeUnit.SECONDS));
+        assertEquals(0, errors.get());
+    }
+
+    private static void checkoutChain(Pool<Integer> pool, AtomicInteger remaining, CountDownLatch latch,
+            AtomicInteger errors) {
+        pool.member().subscribe(m -> {
+            if (remaining.decrementAndGet() == 0) {
+                m.checkin();
+                latch.countDown();
+            } else {
+                // waits for the only member which is then handed over by checkin
+                checkoutChain(pool, remaining, latch, errors);
+                m.checkin();
+            }
+        }, e -> errors.incrementAndGet());
+    }
+
     @Test
     public void testConcurrentUseWithPoolSizeOf1DoesNotHang() {
-        checkDoesNotHang(1);
+        checkDoesNotHang(1, 0);
     }
 
     @Test
     public void testConcurrentUseWithPoolSizeOf2DoesNotHang() {
-        checkDoesNotHang(2);
+        checkDoesNotHang(2, 0);
     }
 
     @Test
     public void testConcurrentUseWithPoolSizeOf10DoesNotHang() {
-        checkDoesNotHang(10);
+        checkDoesNotHang(10, 0);
+    }
+
+    @Test
+    public void testConcurrentUseWithPoolSizeOf1AndDirectEmissionDoesNotHang() {
+        checkDoesNotHang(1, 16);
     }
 
-    private static void checkDoesNotHang(int poolSize) {
+    @Test
+    public void testConcurrentUseWithPoolSizeOf10AndDirectEmissionDoesNotHang() {
+        checkDoesNotHang(10, 16);
+    }
+
+    private static void checkDoesNotHang(int poolSize, int maxDirectEmitDepth) {
         Scheduler io = Schedulers.from(Executors.newFixedThreadPool(2));
         AtomicInteger count = new AtomicInteger();
         Pool<Integer> pool = NonBlockingPool //
@@ -563,6 +807,7 @@ public class NonBlockingPoolTest {
                 .healthCheck(n -> true) //
                 .maxSize(poolSize) //
                 .maxIdleTime(1, TimeUnit.MINUTES) //
+                .maxDirectEmitDepth(maxDirectEmitDepth) //
                 .scheduler(io) //
                 .build();
         Scheduler scheduler = Schedulers.from(Executors.newFixedThreadPool(poolSize));
@@ -656,4 +901,1238 @@ public class NonBlockingPoolTest {
         }
     }
 
+    @Test
+    public void testMembersEmitsDistinctMembersTogether() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(3) //
+                .scheduler(s) //
+                .build();
+        TestObserver<List<Member<Integer>>> ts = pool.members(3).test();
+        s.triggerActions();
+        List<Member<Integer>> list = ts.assertValueCount(1).values().get(0);
+        assertEquals(3, list.size());
+        assertEquals(3, list.stream().map(Member::value).distinct().count());
+        pool.checkinAll(list);
+        TestObserver<List<Member<Integer>>> ts2 = pool.members(2).test();
+        s.triggerActions();
+        assertEquals(2, ts2.assertValueCount(1).values().get(0).size());
+        assertEquals(3, count.get());
+        pool.close();
+    }
+
+    @Test
+    public void testMembersWaitsUntilEnoughMembersAreAvailable() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(2) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Member<Integer>> a = pool.member().test();
+        s.triggerActions();
+        a.assertValueCount(1);
+        TestObserver<List<Member<Integer>>> ts = pool.members(2).test();
+        // a later single request must wait for the earlier batch request
+        TestObserver<Member<Integer>> b = pool.member().test();
+        s.triggerActions();
+        ts.assertNoValues();
+        b.assertNoValues();
+        a.values().get(0).checkin();
+        s.triggerActions();
+        ts.assertValueCount(1);
+        assertEquals(2, ts.values().get(0).size());
+        b.assertNoValues();
+        pool.checkinAll(ts.values().get(0));
+        s.triggerActions();
+        b.assertValueCount(1);
+        pool.close();
+    }
+
+    @Test
+    public void testDisposedMembersReturnsGatheredMembersToPool() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(2) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Member<Integer>> a = pool.member().test();
+        s.triggerActions();
+        TestObserver<List<Member<Integer>>> ts = pool.members(2).test();
+        s.triggerActions();
+        ts.assertNoValues();
+        ts.dispose();
+        // the member gathered by the disposed batch request is available again
+        TestObserver<Member<Integer>> b = pool.member().test();
+        s.triggerActions();
+        b.assertValueCount(1);
+        assertFalse(a.values().get(0) == b.values().get(0));
+        assertEquals(2, count.get());
+        pool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMembersMoreThanMaxSizeThrows() throws Exception {
+        try (Pool<Integer> pool = NonBlockingPool.factory(() -> 1).maxSize(2).build()) {
+            pool.members(3);
+        }
+    }
+
+    @Test
+    public void testWarmupInitializesMinIdleMembers() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(4) //
+                .minIdle(3) //
+                .scheduler(s) //
+                .build();
+        TestObserver<Void> ts = pool.warmup(2).test();
+        ts.assertNotComplete();
+        s.triggerActions();
+        ts.assertComplete();
+        assertEquals(3, count.get());
+        // the warmed up members are available without waiting
+        List<Member<Integer>> list = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            pool.member().subscribe(m -> list.add(m));
+        }
+        assertEquals(3, list.size());
+        pool.close();
+    }
+
+    @Test
+    public void testIdleReleaseKeepsMinIdleMembers() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(3) //
+                .minIdle(1) //
+                .maxIdleTime(1, TimeUnit.MINUTES) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .scheduler(s) //
+                .build();
+        TestObserver<List<Member<Integer>>> ts = pool.members(3).test();
+        s.triggerActions();
+        pool.checkinAll(ts.values().get(0));
+        s.advanceTimeBy(1, TimeUnit.MINUTES);
+        assertEquals(2, disposed.get());
+        s.advanceTimeBy(10, TimeUnit.MINUTES);
+        assertEquals(2, disposed.get());
+        assertEquals(3, count.get());
+        pool.close();
+    }
+
+    @Test
+    public void testIdleSweepInitializesMembersUpToMinIdle() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(3) //
+                .minIdle(2) //
+                .maxIdleTime(1, TimeUnit.MINUTES) //
+                .scheduler(s) //
+                .build();
+        // starts the idle sweep
+        pool.member();
+        s.triggerActions();
+        assertEquals(0, count.get());
+        s.advanceTimeBy(6, TimeUnit.SECONDS);
+        assertEquals(2, count.get());
+        s.advanceTimeBy(10, TimeUnit.MINUTES);
+        assertEquals(2, count.get());
+        pool.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMinIdleGreaterThanMaxSizeThrows() {
+        NonBlockingPool.factory(() -> 1).maxSize(2).minIdle(3).build();
+    }
+
+    @Test
+    public void testAsyncFactoryCreatesMembersWithoutBlockingAndRetriesOnError() throws Exception {
+        Consumer<? super Throwable> handler = RxJavaPlugins.getErrorHandler();
+        List<Throwable> errors = new ArrayList<>();
+        RxJavaPlugins.setErrorHandler(errors::add);
+        try {
+            TestScheduler s = new TestScheduler();
+            AtomicInteger attempts = new AtomicInteger();
+            SingleSubject<Integer> created = SingleSubject.create();
+            Pool<Integer> pool = NonBlockingPool //
+                    .asyncFactory(() -> attempts.incrementAndGet() == 1 //
+                            ? Single.<Integer>error(new TestException()) //
+                            : created) //
+                    .healthCheck(n -> true) //
+                    .maxSize(1) //
+                    .createRetryInterval(10, TimeUnit.SECONDS) //
+                    .scheduler(s) //
+                    .build();
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            assertEquals(1, attempts.get());
+            assertEquals(1, errors.size());
+            assertTrue(errors.get(0).getCause() instanceof TestException);
+            s.advanceTimeBy(10, TimeUnit.SECONDS);
+            assertEquals(2, attempts.get());
+            // creation is pending but no scheduler work is outstanding
+            ts.assertNoValues();
+            created.onSuccess(123);
+            s.triggerActions();
+            assertEquals(123, (int) ts.assertValueCount(1).values().get(0).value());
+            pool.close();
+        } finally {
+            RxJavaPlugins.setErrorHandler(handler);
+        }
+    }
+
+    @Test
+    public void testAsyncHealthCheckFailureDisposesAsynchronouslyThenRecreates() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        SingleSubject<Boolean> check = SingleSubject.create();
+        CompletableSubject disposal = CompletableSubject.create();
+        List<Integer> disposed = new ArrayList<>();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .asyncHealthCheck(n -> check) //
+                .asyncDisposer(n -> disposal.doOnComplete(() -> disposed.add(n))) //
+                .idleTimeBeforeHealthCheck(1, TimeUnit.SECONDS) //
+                .createRetryInterval(1, TimeUnit.SECONDS) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build();
+        pool.member().doOnSuccess(Member::checkin).test();
+        s.triggerActions();
+        assertEquals(1, count.get());
+        s.advanceTimeBy(2, TimeUnit.SECONDS);
+        TestObserver<Member<Integer>> ts = pool.member().test();
+        s.triggerActions();
+        // health check is pending
+        assertTrue(check.hasObservers());
+        ts.assertNoValues();
+        check.onSuccess(false);
+        s.advanceTimeBy(10, TimeUnit.SECONDS);
+        // disposal is pending so the member is not recreated
+        assertEquals(1, count.get());
+        assertTrue(disposed.isEmpty());
+        disposal.onComplete();
+        assertEquals(Arrays.asList(1), disposed);
+        s.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(2, count.get());
+        assertEquals(2, (int) ts.assertValueCount(1).values().get(0).value());
+        pool.close();
+    }
+
+    @Test
+    public void testHealthCheckThatThrowsCountsAsUnhealthy() throws Exception {
+        Consumer<? super Throwable> handler = RxJavaPlugins.getErrorHandler();
+        List<Throwable> errors = new ArrayList<>();
+        RxJavaPlugins.setErrorHandler(errors::add);
+        try {
+            TestScheduler s = new TestScheduler();
+            AtomicInteger count = new AtomicInteger();
+            List<Integer> disposed = new ArrayList<>();
+            try (Pool<Integer> pool = NonBlockingPool //
+                    .factory(() -> count.incrementAndGet()) //
+                    .healthCheck(n -> {
+                        throw new TestException();
+                    }) //
+                    .disposer(disposed::add) //
+                    .idleTimeBeforeHealthCheck(1, TimeUnit.SECONDS) //
+                    .createRetryInterval(1, TimeUnit.SECONDS) //
+                    .maxSize(1) //
+                    .scheduler(s) //
+                    .build()) {
+                assertUnhealthyMemberIsRecreated(s, pool, count, disposed);
+                assertEquals(1, errors.size());
+                assertTrue(errors.get(0).getCause() instanceof TestException);
+            }
+        } finally {
+            RxJavaPlugins.setErrorHandler(handler);
+        }
+    }
+
+    @Test
+    public void testAsyncHealthCheckThatReturnsNullCountsAsUnhealthy() throws Exception {
+        Consumer<? super Throwable> handler = RxJavaPlugins.getErrorHandler();
+        List<Throwable> errors = new ArrayList<>();
+        RxJavaPlugins.setErrorHandler(errors::add);
+        try {
+            TestScheduler s = new TestScheduler();
+            AtomicInteger count = new AtomicInteger();
+            List<Integer> disposed = new ArrayList<>();
+            try (Pool<Integer> pool = NonBlockingPool //
+                    .factory(() -> count.incrementAndGet()) //
+                    .asyncHealthCheck(n -> null) //
+                    .disposer(disposed::add) //
+                    .idleTimeBeforeHealthCheck(1, TimeUnit.SECONDS) //
+                    .createRetryInterval(1, TimeUnit.SECONDS) //
+                    .maxSize(1) //
+                    .scheduler(s) //
+                    .build()) {
+                assertUnhealthyMemberIsRecreated(s, pool, count, disposed);
+                assertEquals(1, errors.size());
+                assertTrue(errors.get(0) instanceof NullPointerException);
+            }
+        } finally {
+            RxJavaPlugins.setErrorHandler(handler);
+        }
+    }
+
+    private static void assertUnhealthyMemberIsRecreated(TestScheduler s, Pool<Integer> pool, AtomicInteger count,
+            List<Integer> disposed) {
+        pool.member().doOnSuccess(Member::checkin).test();
+        s.triggerActions();
+        assertEquals(1, count.get());
+        s.advanceTimeBy(2, TimeUnit.SECONDS);
+        TestObserver<Member<Integer>> ts = pool.member().test();
+        s.triggerActions();
+        // the failed check disposes the value and the member is recreated
+        ts.assertNoValues();
+        assertEquals(Arrays.asList(1), disposed);
+        s.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(2, count.get());
+        assertEquals(2, (int) ts.assertValueCount(1).values().get(0).value());
+    }
+
+    @Test
+    public void testWaiterFailsAfterMaxWaitTime() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .maxWaitTime(1, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            TestObserver<Member<Integer>> b = pool.member().test();
+            s.advanceTimeBy(900, TimeUnit.MILLISECONDS);
+            b.assertNoValues().assertNoErrors();
+            s.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+            b.assertNoValues().assertError(TimeoutException.class);
+            a.values().get(0).checkin();
+            TestObserver<Member<Integer>> c = pool.member().test();
+            s.triggerActions();
+            c.assertValueCount(1).assertNoErrors();
+        }
+    }
+
+    @Test
+    public void testMaxPendingAcquiresRejectsExtraWaiters() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .maxPendingAcquires(1) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            TestObserver<Member<Integer>> b = pool.member().test();
+            b.assertNoValues().assertNoErrors();
+            pool.member().test().assertNoValues().assertError(PoolExhaustedException.class);
+            b.dispose();
+            TestObserver<Member<Integer>> d = pool.member().test();
+            d.assertNoValues().assertNoErrors();
+            a.values().get(0).checkin();
+            s.triggerActions();
+            d.assertValueCount(1);
+            b.assertNoValues();
+        }
+    }
+
+    @Test
+    public void testHigherPriorityWaiterIsServedFirst() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            TestObserver<Member<Integer>> b = pool.member().test();
+            TestObserver<Member<Integer>> c = pool.member(5).test();
+            TestObserver<Member<Integer>> d = pool.member(10).test();
+            TestObserver<Member<Integer>> e = pool.member(1).test();
+            d.dispose();
+            a.values().get(0).checkin();
+            s.triggerActions();
+            c.assertValueCount(1);
+            b.assertNoValues();
+            e.assertNoValues();
+            c.values().get(0).checkin();
+            s.triggerActions();
+            e.assertValueCount(1);
+            b.assertNoValues();
+            e.values().get(0).checkin();
+            s.triggerActions();
+            b.assertValueCount(1);
+            d.assertNoValues();
+        }
+    }
+
+    @Test
+    public void testLowPriorityWaiterIsNotStarved() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .priorityAgingInterval(1, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            TestObserver<Member<Integer>> b = pool.member(-1).test();
+            s.advanceTimeBy(3, TimeUnit.SECONDS);
+            // b has waited longer than the 1s that c is worth
+            TestObserver<Member<Integer>> c = pool.member(1).test();
+            a.values().get(0).checkin();
+            s.triggerActions();
+            b.assertValueCount(1);
+            c.assertNoValues();
+            b.values().get(0).checkin();
+            s.triggerActions();
+            c.assertValueCount(1);
+        }
+    }
+
+    @Test
+    public void testFifoFairnessIgnoresPriority() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .fairness(Fairness.FIFO) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            TestObserver<Member<Integer>> b = pool.member().test();
+            TestObserver<Member<Integer>> c = pool.member(5).test();
+            TestObserver<Member<Integer>> d = pool.member().test();
+            TestObserver<Member<Integer>> e = pool.member(10).test();
+            // removal does not change the order of the others
+            d.dispose();
+            List<TestObserver<Member<Integer>>> order = Arrays.asList(a, b, c, e);
+            for (int i = 1; i < order.size(); i++) {
+                order.get(i - 1).values().get(0).checkin();
+                s.triggerActions();
+                order.get(i).assertValueCount(1);
+                for (int j = i + 1; j < order.size(); j++) {
+                    order.get(j).assertNoValues();
+                }
+            }
+            d.assertNoValues();
+        }
+    }
+
+    @Test
+    public void testReconfigureGrowsMaxSize() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .maxSize(1) //
+                .maxSizeLimit(3) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            TestObserver<Member<Integer>> b = pool.member().test();
+            s.triggerActions();
+            b.assertNoValues();
+            pool.reconfigure().maxSize(2).apply();
+            s.triggerActions();
+            b.assertValueCount(1);
+            assertEquals(2, count.get());
+            TestObserver<Member<Integer>> c = pool.member().test();
+            s.triggerActions();
+            c.assertNoValues();
+            assertEquals(2, count.get());
+        }
+    }
+
+    @Test
+    public void testReconfigureShrinksMaxSize() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(3) //
+                .scheduler(s) //
+                .build()) {
+            List<Member<Integer>> list = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                pool.member().subscribe(m -> list.add(m));
+            }
+            s.triggerActions();
+            assertEquals(3, list.size());
+            // one idle member is released immediately
+            list.remove(2).checkin();
+            pool.reconfigure().maxSize(1).apply();
+            s.triggerActions();
+            assertEquals(1, disposed.get());
+            // members in use are released on checkin
+            for (Member<Integer> m : list) {
+                m.checkin();
+            }
+            s.triggerActions();
+            assertEquals(2, disposed.get());
+            TestObserver<Member<Integer>> a = pool.member().test();
+            TestObserver<Member<Integer>> b = pool.member().test();
+            s.triggerActions();
+            a.assertValueCount(1);
+            b.assertNoValues();
+            assertEquals(3, count.get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testReconfigureMaxSizeAboveLimitThrows() throws Exception {
+        try (NonBlockingPool<Integer> pool = NonBlockingPool.factory(() -> 1).maxSize(2).maxSizeLimit(3).build()) {
+            pool.reconfigure().maxSize(4);
+        }
+    }
+
+    @Test
+    public void testReconfigureMaxIdleTimeStartsIdleSweep() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger disposed = new AtomicInteger();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            pool.member().doOnSuccess(Member::checkin).test();
+            s.triggerActions();
+            pool.reconfigure().maxIdleTime(1, TimeUnit.SECONDS).apply();
+            pool.member().doOnSuccess(Member::checkin).test();
+            s.advanceTimeBy(2, TimeUnit.SECONDS);
+            assertEquals(1, disposed.get());
+        }
+    }
+
+    @Test
+    public void testReconfigureMaxIdleTimeToZeroStopsIdleRelease() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger disposed = new AtomicInteger();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxIdleTime(1, TimeUnit.SECONDS) //
+                // keeps the sweep running
+                .maxWaitTime(1, TimeUnit.HOURS) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            pool.member().doOnSuccess(Member::checkin).test();
+            s.triggerActions();
+            pool.reconfigure().maxIdleTime(0, TimeUnit.SECONDS).apply();
+            s.advanceTimeBy(10, TimeUnit.MINUTES);
+            assertEquals(0, disposed.get());
+        }
+    }
+
+    @Test
+    public void testSizeControllerGrowsAndShrinksPool() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(1) //
+                .maxSizeLimit(3) //
+                .sizeController(SizeController.aimd(0, TimeUnit.MILLISECONDS), 1, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            TestObserver<Member<Integer>> b = pool.member().test();
+            s.triggerActions();
+            b.assertNoValues();
+            // b is waiting so the pool grows
+            s.advanceTimeBy(1, TimeUnit.SECONDS);
+            b.assertValueCount(1);
+            assertEquals(2, count.get());
+            a.values().get(0).checkin();
+            b.values().get(0).checkin();
+            // nothing in use so the pool shrinks
+            s.advanceTimeBy(1, TimeUnit.SECONDS);
+            assertEquals(1, disposed.get());
+            // never shrinks below 1
+            s.advanceTimeBy(10, TimeUnit.SECONDS);
+            assertEquals(1, disposed.get());
+        }
+    }
+
+    @Test
+    public void testBlockingSchedulerRunsFactoryAndDisposer() throws Exception {
+        TestScheduler s = new TestScheduler();
+        TestScheduler blocking = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(1) //
+                .maxIdleTime(1, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .blockingScheduler(blocking) //
+                .build()) {
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            assertEquals(0, count.get());
+            blocking.triggerActions();
+            assertEquals(1, count.get());
+            // emission stays on the scheduler
+            ts.assertNoValues();
+            s.triggerActions();
+            ts.assertValueCount(1);
+            ts.values().get(0).checkin();
+            s.advanceTimeBy(2, TimeUnit.SECONDS);
+            assertEquals(0, disposed.get());
+            blocking.triggerActions();
+            assertEquals(1, disposed.get());
+        }
+    }
+
+    @Test
+    public void testNoDirectEmissionFromBlockingScheduler() throws Exception {
+        TestScheduler s = new TestScheduler();
+        TestScheduler blocking = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .healthCheck(n -> true) //
+                .idleTimeBeforeHealthCheck(1, TimeUnit.SECONDS) //
+                .maxSize(1) //
+                .maxDirectEmitDepth(4) //
+                .scheduler(s) //
+                .blockingScheduler(blocking) //
+                .build()) {
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            blocking.triggerActions();
+            // created on the blocking scheduler but emitted via the scheduler
+            ts.assertNoValues();
+            s.triggerActions();
+            ts.assertValueCount(1);
+            ts.values().get(0).checkin();
+            s.advanceTimeBy(2, TimeUnit.SECONDS);
+            TestObserver<Member<Integer>> ts2 = pool.member().test();
+            s.triggerActions();
+            blocking.triggerActions();
+            // health checked on the blocking scheduler but emitted via the
+            // scheduler
+            ts2.assertNoValues();
+            s.triggerActions();
+            ts2.assertValueCount(1);
+        }
+    }
+
+    @Test
+    public void testBlockingOnVirtualThreads() throws Exception {
+        NonBlockingPool.Builder<String> builder = NonBlockingPool //
+                .factory(() -> Thread.currentThread().toString()) //
+                .maxSize(1);
+        try {
+            builder.blockingOnVirtualThreads();
+        } catch (UnsupportedOperationException e) {
+            // running on a JDK without virtual threads
+            Assume.assumeNoException(e);
+        }
+        try (Pool<String> pool = builder.build()) {
+            Member<String> m = pool.member().blockingGet();
+            assertTrue(m.value().startsWith("VirtualThread"));
+            m.checkin();
+        }
+    }
+
+    @Test
+    public void testAcquireReusesIdleMember() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .maxSize(1) //
+                .scheduler(Schedulers.trampoline()) //
+                .build()) {
+            Member<Integer> m = pool.acquire(1, TimeUnit.SECONDS);
+            assertEquals(1, (int) m.value());
+            m.checkin();
+            Member<Integer> m2 = pool.acquire(1, TimeUnit.SECONDS);
+            assertEquals(1, (int) m2.value());
+            assertEquals(1, count.get());
+            m2.checkin();
+        }
+    }
+
+    @Test
+    public void testAcquireTimesOut() throws Exception {
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(Schedulers.trampoline()) //
+                .build()) {
+            Member<Integer> m = pool.acquire(1, TimeUnit.SECONDS);
+            try {
+                pool.acquire(10, TimeUnit.MILLISECONDS);
+                fail();
+            } catch (TimeoutException e) {
+                // expected
+            }
+            m.checkin();
+            // the timed out waiter is not emitted to
+            pool.acquire(1, TimeUnit.SECONDS).checkin();
+        }
+    }
+
+    @Test
+    public void testAcquireWaitsForCheckinOnAnotherThread() throws Exception {
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(Schedulers.trampoline()) //
+                .build()) {
+            Member<Integer> m = pool.acquire(1, TimeUnit.SECONDS);
+            Thread t = new Thread(() -> {
+                sleep(100);
+                m.checkin();
+            });
+            t.start();
+            Member<Integer> m2 = pool.acquire(10, TimeUnit.SECONDS);
+            assertEquals(1, (int) m2.value());
+            t.join();
+        }
+    }
+
+    @Test
+    public void testAcquireThrowsWhenPoolClosesWhileWaiting() throws Exception {
+        NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(Schedulers.trampoline()) //
+                .build();
+        pool.acquire(1, TimeUnit.SECONDS);
+        Thread t = new Thread(() -> {
+            sleep(100);
+            pool.close();
+        });
+        t.start();
+        try {
+            pool.acquire(10, TimeUnit.SECONDS);
+            fail();
+        } catch (PoolClosedException e) {
+            // expected
+        }
+        t.join();
+        try {
+            pool.acquire(1, TimeUnit.SECONDS);
+            fail();
+        } catch (PoolClosedException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testLeakIsReportedOnce() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger leaks = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .maxSize(1) //
+                .leakDetectionThreshold(1, TimeUnit.SECONDS) //
+                .leakStackTraceSampling(1) //
+                .metrics(new PoolMetrics() {
+                    @Override
+                    public void recordLeak() {
+                        leaks.incrementAndGet();
+                    }
+                }) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            s.advanceTimeBy(900, TimeUnit.MILLISECONDS);
+            assertEquals(0, leaks.get());
+            s.advanceTimeBy(200, TimeUnit.MILLISECONDS);
+            assertEquals(1, leaks.get());
+            s.advanceTimeBy(5, TimeUnit.SECONDS);
+            assertEquals(1, leaks.get());
+            // not reclaimed so checkin returns the member to the pool
+            ts.values().get(0).checkin();
+            TestObserver<Member<Integer>> ts2 = pool.member().test();
+            s.triggerActions();
+            assertEquals(1, (int) ts2.values().get(0).value());
+            assertEquals(1, count.get());
+        }
+    }
+
+    @Test
+    public void testLeakedMemberIsReclaimed() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(1) //
+                .leakDetectionThreshold(1, TimeUnit.SECONDS) //
+                .reclaimLeakedMembers(true) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            Member<Integer> leaked = ts.values().get(0);
+            TestObserver<Member<Integer>> ts2 = pool.member().test();
+            s.triggerActions();
+            ts2.assertNoValues();
+            s.advanceTimeBy(1100, TimeUnit.MILLISECONDS);
+            assertEquals(1, disposed.get());
+            // the waiting subscriber gets a replacement member
+            ts2.assertValueCount(1);
+            assertEquals(2, (int) ts2.values().get(0).value());
+            // a late checkin of the leaked member is ignored
+            leaked.checkin();
+            TestObserver<Member<Integer>> ts3 = pool.member().test();
+            s.triggerActions();
+            ts3.assertNoValues();
+        }
+    }
+
+    @Test
+    public void testMemberPastMaxLifetimeIsRecreatedOnCheckin() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(1) //
+                .maxLifetime(10, 0, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            // in use so not released when past maxLifetime
+            s.advanceTimeBy(11, TimeUnit.SECONDS);
+            assertEquals(0, disposed.get());
+            ts.values().get(0).checkin();
+            s.triggerActions();
+            assertEquals(1, disposed.get());
+            // recreated without waiting for a subscriber
+            assertEquals(2, count.get());
+            TestObserver<Member<Integer>> ts2 = pool.member().test();
+            s.triggerActions();
+            assertEquals(2, (int) ts2.values().get(0).value());
+        }
+    }
+
+    @Test
+    public void testIdleMembersPastMaxLifetimeAreRecreatedWithJitter() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .maxSize(10) //
+                .minIdle(10) //
+                .maxLifetime(10, 5, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .build()) {
+            pool.warmup().test();
+            s.triggerActions();
+            assertEquals(10, count.get());
+            // lifetimes are between 5s and 10s
+            s.advanceTimeBy(4900, TimeUnit.MILLISECONDS);
+            assertEquals(0, disposed.get());
+            s.advanceTimeBy(5200, TimeUnit.MILLISECONDS);
+            assertEquals(10, disposed.get());
+            assertEquals(20, count.get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxLifetimeJitterMustBeLessThanDuration() {
+        NonBlockingPool.factory(() -> 1).maxLifetime(10, 10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testBackgroundHealthChecksOfIdleMembersAreBounded() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        List<SingleSubject<Boolean>> checks = new ArrayList<>();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .asyncHealthCheck(n -> {
+                    SingleSubject<Boolean> check = SingleSubject.create();
+                    checks.add(check);
+                    return check;
+                }) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .idleTimeBeforeHealthCheck(0, TimeUnit.SECONDS) //
+                .backgroundHealthCheck(1, 0, TimeUnit.SECONDS) //
+                .maxConcurrentBackgroundHealthChecks(2) //
+                .maxSize(3) //
+                .minIdle(3) //
+                .scheduler(s) //
+                .build()) {
+            pool.warmup().test();
+            s.triggerActions();
+            assertEquals(3, count.get());
+            s.advanceTimeBy(900, TimeUnit.MILLISECONDS);
+            assertEquals(0, checks.size());
+            s.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+            assertEquals(2, checks.size());
+            s.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+            assertEquals(2, checks.size());
+            // a dead member is found before it is checked out
+            checks.get(0).onSuccess(false);
+            assertEquals(1, disposed.get());
+            s.advanceTimeBy(100, TimeUnit.MILLISECONDS);
+            assertEquals(3, checks.size());
+            // members being checked are not emitted
+            TestObserver<Member<Integer>> ts = pool.member().test();
+            s.triggerActions();
+            ts.assertNoValues();
+            checks.get(1).onSuccess(true);
+            s.triggerActions();
+            ts.assertValueCount(1);
+            assertNotNull(ts.values().get(0).value());
+            // the dead member is recreated once after the retry interval
+            s.advanceTimeBy(30, TimeUnit.SECONDS);
+            assertEquals(4, count.get());
+        }
+    }
+
+    @Test
+    public void testBackgroundHealthChecksContinueAfterCheckThrows() throws Exception {
+        Consumer<? super Throwable> handler = RxJavaPlugins.getErrorHandler();
+        List<Throwable> errors = new ArrayList<>();
+        RxJavaPlugins.setErrorHandler(errors::add);
+        try {
+            TestScheduler s = new TestScheduler();
+            AtomicInteger count = new AtomicInteger();
+            AtomicInteger checks = new AtomicInteger();
+            try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                    .factory(() -> count.incrementAndGet()) //
+                    .healthCheck(n -> {
+                        if (checks.incrementAndGet() == 1) {
+                            throw new TestException();
+                        }
+                        return true;
+                    }) //
+                    .idleTimeBeforeHealthCheck(0, TimeUnit.SECONDS) //
+                    .backgroundHealthCheck(1, 0, TimeUnit.SECONDS) //
+                    .maxConcurrentBackgroundHealthChecks(1) //
+                    .createRetryInterval(1, TimeUnit.SECONDS) //
+                    .maxSize(1) //
+                    .minIdle(1) //
+                    .scheduler(s) //
+                    .build()) {
+                pool.warmup().test();
+                s.triggerActions();
+                assertEquals(1, count.get());
+                s.advanceTimeBy(1, TimeUnit.SECONDS);
+                assertEquals(1, checks.get());
+                assertEquals(1, errors.size());
+                // the failed member is recreated and checked again in the background
+                s.advanceTimeBy(10, TimeUnit.SECONDS);
+                assertEquals(2, count.get());
+                assertTrue(checks.get() > 2);
+                assertEquals(1, errors.size());
+            }
+        } finally {
+            RxJavaPlugins.setErrorHandler(handler);
+        }
+    }
+
+    @Test
+    public void testBulkHealthCheckChecksMembersTogether() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        List<List<Integer>> calls = new ArrayList<>();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .bulkHealthCheck(list -> {
+                    calls.add(new ArrayList<>(list));
+                    boolean[] healthy = new boolean[list.size()];
+                    for (int i = 0; i < healthy.length; i++) {
+                        healthy[i] = list.get(i) != 2;
+                    }
+                    return Single.just(healthy);
+                }) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .idleTimeBeforeHealthCheck(1, TimeUnit.SECONDS) //
+                .createRetryInterval(1, TimeUnit.SECONDS) //
+                .maxSize(3) //
+                .minIdle(3) //
+                .scheduler(s) //
+                .build()) {
+            pool.warmup().test();
+            s.triggerActions();
+            assertEquals(3, count.get());
+            s.advanceTimeBy(2, TimeUnit.SECONDS);
+            TestObserver<List<Member<Integer>>> ts = pool.members(3).test();
+            s.triggerActions();
+            // all three members were due and were checked in one call
+            assertEquals(1, calls.size());
+            assertEquals(3, calls.get(0).size());
+            assertEquals(1, disposed.get());
+            ts.assertNoValues();
+            // the unhealthy member is recreated after the retry interval
+            s.advanceTimeBy(1, TimeUnit.SECONDS);
+            ts.assertValueCount(1);
+            assertEquals(4, count.get());
+            assertEquals(1, calls.size());
+        }
+    }
+
+    @Test
+    public void testUsingChecksInWhenWorkTerminates() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            TestSubscriber<Integer> ts = pool.using(n -> Flowable.just(n, n + 1)).test(1);
+            s.triggerActions();
+            ts.assertValues(1).assertNotComplete();
+            assertEquals(0, pool.idleCount());
+            ts.request(1);
+            s.triggerActions();
+            ts.assertValues(1, 2).assertComplete();
+            assertEquals(1, pool.idleCount());
+            TestObserver<Object> error = pool.usingSingle(n -> Single.error(new RuntimeException("boo"))).test();
+            s.triggerActions();
+            error.assertError(RuntimeException.class);
+            assertEquals(1, pool.idleCount());
+            TestObserver<Void> to = pool.usingCompletable(n -> Completable.complete()).test();
+            s.triggerActions();
+            to.assertComplete();
+            assertEquals(1, pool.idleCount());
+            // the member is not checked in twice
+            to.dispose();
+            TestObserver<Member<Integer>> m = pool.member().test();
+            s.triggerActions();
+            m.assertValueCount(1);
+            assertEquals(0, pool.idleCount());
+        }
+    }
+
+    @Test
+    public void testUsingChecksInOnCancel() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            TestSubscriber<Object> ts = pool.using(n -> Flowable.never()).test();
+            s.triggerActions();
+            assertEquals(0, pool.idleCount());
+            // waits for the member
+            TestObserver<Integer> waiting = pool.usingSingle(n -> Single.just(n)).test();
+            s.triggerActions();
+            waiting.assertNoValues();
+            // cancelled before the member is emitted so nothing is checked in
+            waiting.dispose();
+            ts.cancel();
+            s.triggerActions();
+            assertEquals(1, pool.idleCount());
+            TestObserver<Void> to = pool.usingCompletable(n -> Completable.never()).test();
+            s.triggerActions();
+            assertEquals(0, pool.idleCount());
+            to.dispose();
+            s.triggerActions();
+            assertEquals(1, pool.idleCount());
+        }
+    }
+
+    @Test
+    public void testUsingChecksInWhenWorkThrows() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            TestObserver<Object> to = pool.usingSingle(n -> {
+                throw new IllegalStateException("boo");
+            }).test();
+            s.triggerActions();
+            to.assertError(IllegalStateException.class);
+            assertEquals(1, pool.idleCount());
+        }
+    }
+
+    @Test
+    public void testUsingDoesNotCheckInWhileWorkIsStartedWhenDisposed() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (NonBlockingPool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(1) //
+                .scheduler(s) //
+                .build()) {
+            AtomicInteger idleDuringWork = new AtomicInteger(-1);
+            TestObserver<Integer> to = new TestObserver<>();
+            pool.usingSingle(n -> {
+                // disposed after the member was emitted but before the work is
+                // subscribed
+                to.dispose();
+                idleDuringWork.set(pool.idleCount());
+                return Single.<Integer>never();
+            }).subscribe(to);
+            s.triggerActions();
+            assertEquals(0, idleDuringWork.get());
+            assertEquals(1, pool.idleCount());
+            idleDuringWork.set(-1);
+            TestSubscriber<Integer> ts = new TestSubscriber<>();
+            pool.using(n -> {
+                ts.cancel();
+                idleDuringWork.set(pool.idleCount());
+                return Flowable.<Integer>never();
+            }).subscribe(ts);
+            s.triggerActions();
+            assertEquals(0, idleDuringWork.get());
+            assertEquals(1, pool.idleCount());
+        }
+    }
+
+    @Test
+    public void testMetrics() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        RecordingMetrics metrics = new RecordingMetrics();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> n != 1) //
+                .idleTimeBeforeHealthCheck(1, TimeUnit.SECONDS) //
+                .maxIdleTime(1, TimeUnit.MINUTES) //
+                .createRetryInterval(1, TimeUnit.SECONDS) //
+                .maxSize(2) //
+                .metrics(metrics) //
+                .scheduler(s) //
+                .build();
+        PoolMetrics.Gauges gauges = metrics.gauges;
+        assertNotNull(gauges);
+        TestObserver<Member<Integer>> a = pool.member().test();
+        TestObserver<Member<Integer>> b = pool.member().test();
+        TestObserver<Member<Integer>> c = pool.member().test();
+        assertEquals(3, gauges.waiting());
+        assertEquals(2, gauges.initializing());
+        s.triggerActions();
+        assertEquals(2, metrics.creates.get());
+        assertEquals(2, metrics.waits.get());
+        assertEquals(2, gauges.inUse());
+        assertEquals(1, gauges.waiting());
+        a.values().get(0).checkin();
+        s.triggerActions();
+        assertEquals(1, metrics.holds.get());
+        assertEquals(3, metrics.waits.get());
+        b.values().get(0).checkin();
+        c.values().get(0).checkin();
+        assertEquals(3, metrics.holds.get());
+        assertEquals(0, gauges.inUse());
+        assertEquals(2, gauges.idle());
+        // member with value 1 fails its health check
+        s.advanceTimeBy(2, TimeUnit.SECONDS);
+        pool.member().test();
+        pool.member().test();
+        s.triggerActions();
+        assertEquals(1, metrics.failedChecks.get());
+        assertEquals(1, metrics.checks.get());
+        s.advanceTimeBy(1, TimeUnit.SECONDS);
+        assertEquals(3, metrics.creates.get());
+        assertEquals(2, gauges.inUse());
+        assertEquals(0, metrics.releases.get());
+        pool.close();
+    }
+
+    private static final class RecordingMetrics implements PoolMetrics {
+
+        volatile Gauges gauges;
+        final AtomicInteger waits = new AtomicInteger();
+        final AtomicInteger holds = new AtomicInteger();
+        final AtomicInteger creates = new AtomicInteger();
+        final AtomicInteger checks = new AtomicInteger();
+        final AtomicInteger failedChecks = new AtomicInteger();
+        final AtomicInteger releases = new AtomicInteger();
+
+        @Override
+        public void register(Gauges gauges) {
+            this.gauges = gauges;
+        }
+
+        @Override
+        public void recordWaitTime(long nanos) {
+            assertTrue(nanos >= 0);
+            waits.incrementAndGet();
+        }
+
+        @Override
+        public void recordHoldTime(long nanos) {
+            assertTrue(nanos >= 0);
+            holds.incrementAndGet();
+        }
+
+        @Override
+        public void recordCreateTime(long nanos) {
+            assertTrue(nanos >= 0);
+            creates.incrementAndGet();
+        }
+
+        @Override
+        public void recordHealthCheck(long nanos, boolean healthy) {
+            assertTrue(nanos >= 0);
+            if (healthy) {
+                checks.incrementAndGet();
+            } else {
+                failedChecks.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void recordRelease() {
+            releases.incrementAndGet();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
 }
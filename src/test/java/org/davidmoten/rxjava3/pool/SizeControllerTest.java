@@ -0,0 +1,48 @@
+package org.davidmoten.rxjava3.pool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SizeControllerTest {
+
+    private static final SizeController AIMD = SizeController.aimd(100, TimeUnit.MILLISECONDS);
+
+    @Test
+    public void testAimdGrowsWhenSubscribersWaiting() {
+        assertEquals(5, AIMD.size(sample(4, 4, 1, 0)));
+    }
+
+    @Test
+    public void testAimdGrowsWhenMeanWaitTimeAboveTarget() {
+        assertEquals(5, AIMD.size(sample(4, 4, 0, 101)));
+    }
+
+    @Test
+    public void testAimdKeepsSizeWhenBusyWithoutWaiting() {
+        assertEquals(4, AIMD.size(sample(4, 2, 0, 100)));
+    }
+
+    @Test
+    public void testAimdShrinksMultiplicativelyWhenUnderused() {
+        assertEquals(6, AIMD.size(sample(8, 1, 0, 0)));
+    }
+
+    @Test
+    public void testAimdDoesNotShrinkBelowInUse() {
+        SizeController c = SizeController.aimd(100, TimeUnit.MILLISECONDS, 1, 0.25, 0.5);
+        assertEquals(7, c.size(sample(20, 7, 0, 0)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAimdDecreaseFactorMustBeLessThanOne() {
+        SizeController.aimd(100, TimeUnit.MILLISECONDS, 1, 1.0, 0.5);
+    }
+
+    private static SizeController.Sample sample(int size, int inUse, int waiting, long meanWaitTimeMs) {
+        return new SizeController.Sample(size, 1, 100, inUse, waiting, 10, meanWaitTimeMs, meanWaitTimeMs);
+    }
+
+}
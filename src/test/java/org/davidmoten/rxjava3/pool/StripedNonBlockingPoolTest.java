@@ -0,0 +1,194 @@
+package org.davidmoten.rxjava3.pool;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.schedulers.TestScheduler;
+
+public class StripedNonBlockingPoolTest {
+
+    @Test
+    public void testAllStripesAreUsedFromOneThread() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        AtomicInteger disposed = new AtomicInteger();
+        AtomicInteger closed = new AtomicInteger();
+        Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(5) //
+                .disposer(n -> disposed.incrementAndGet()) //
+                .onClose(() -> closed.incrementAndGet()) //
+                .scheduler(s) //
+                .buildStriped(2);
+        List<Member<Integer>> list = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            pool.member().subscribe(m -> list.add(m));
+        }
+        s.triggerActions();
+        assertEquals(5, list.size());
+        assertEquals(5, count.get());
+        for (int i = 0; i < 5; i++) {
+            list.get(i).checkin();
+        }
+        s.triggerActions();
+        assertEquals(6, list.size());
+        list.get(5).checkin();
+        list.clear();
+        // idle members of every stripe are found without waiting
+        for (int i = 0; i < 5; i++) {
+            pool.member().subscribe(m -> list.add(m));
+        }
+        assertEquals(5, list.size());
+        assertEquals(5, count.get());
+        pool.close();
+        assertEquals(5, disposed.get());
+        assertEquals(1, closed.get());
+    }
+
+    @Test
+    public void testMembersComeFromOneStripe() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .healthCheck(n -> true) //
+                .maxSize(4) //
+                .scheduler(s) //
+                .buildStriped(2)) {
+            TestObserver<List<Member<Integer>>> ts = pool.members(2).test();
+            s.triggerActions();
+            assertEquals(2, ts.assertValueCount(1).values().get(0).size());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMembersMoreThanStripeSizeThrows() throws Exception {
+        try (Pool<Integer> pool = NonBlockingPool.factory(() -> 1).maxSize(4).buildStriped(2)) {
+            pool.members(3);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMoreStripesThanMaxSizeThrows() {
+        NonBlockingPool.factory(() -> 1).maxSize(2).buildStriped(3);
+    }
+
+    @Test
+    public void testWaiterIsServedByAnotherStripe() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(new AtomicInteger()::incrementAndGet) //
+                .maxSize(2) //
+                .scheduler(s) //
+                .buildStriped(2)) {
+            TestObserver<Member<Integer>> a = pool.member().test();
+            s.triggerActions();
+            TestObserver<Member<Integer>> b = pool.member().test();
+            s.triggerActions();
+            // waits on the stripe of a
+            TestObserver<Member<Integer>> c = pool.member().test();
+            s.triggerActions();
+            c.assertNoValues();
+            b.values().get(0).checkin();
+            s.triggerActions();
+            c.assertValueCount(1);
+            assertEquals(b.values().get(0).value(), c.values().get(0).value());
+            // c no longer waits on the stripe of a
+            a.values().get(0).checkin();
+            s.triggerActions();
+            TestObserver<Member<Integer>> d = pool.member().test();
+            d.assertValueCount(1);
+            assertEquals(a.values().get(0).value(), d.values().get(0).value());
+        }
+    }
+
+    @Test
+    public void testStripesShareMaxSizeLimit() throws Exception {
+        TestScheduler s = new TestScheduler();
+        AtomicInteger count = new AtomicInteger();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> count.incrementAndGet()) //
+                .maxSize(2) //
+                .maxSizeLimit(4) //
+                .sizeController(SizeController.aimd(0, TimeUnit.MILLISECONDS), 1, TimeUnit.SECONDS) //
+                .scheduler(s) //
+                .buildStriped(2)) {
+            pool.member().test();
+            pool.member().test();
+            s.triggerActions();
+            TestObserver<Member<Integer>> c = pool.member().test();
+            s.triggerActions();
+            c.assertNoValues();
+            // the stripe c waits on grows beyond its share of maxSize
+            s.advanceTimeBy(1, TimeUnit.SECONDS);
+            c.assertValueCount(1);
+            assertEquals(3, count.get());
+        }
+    }
+
+    @Test
+    public void testStripesShareMaxPendingAcquires() throws Exception {
+        TestScheduler s = new TestScheduler();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(new AtomicInteger()::incrementAndGet) //
+                .maxSize(2) //
+                .maxPendingAcquires(2) //
+                .scheduler(s) //
+                .buildStriped(2)) {
+            pool.member().test();
+            pool.member().test();
+            s.triggerActions();
+            // one waiter on each stripe
+            TestObserver<Member<Integer>> c = pool.member().test();
+            TestObserver<Member<Integer>> d = pool.member().test();
+            s.triggerActions();
+            c.assertNoValues().assertNoErrors();
+            d.assertNoValues().assertNoErrors();
+            pool.member().test().assertError(PoolExhaustedException.class);
+        }
+    }
+
+    @Test
+    public void testMetricsRegistersGaugesOfAllStripesOnce() throws Exception {
+        TestScheduler s = new TestScheduler();
+        List<PoolMetrics.Gauges> registered = new ArrayList<>();
+        try (Pool<Integer> pool = NonBlockingPool //
+                .factory(() -> 1) //
+                .maxSize(4) //
+                .metrics(new PoolMetrics() {
+                    @Override
+                    public void register(Gauges gauges) {
+                        registered.add(gauges);
+                    }
+                }) //
+                .scheduler(s) //
+                .buildStriped(2)) {
+            assertEquals(1, registered.size());
+            TestObserver<Member<Integer>> a = pool.member().test();
+            pool.member().test();
+            pool.member().test();
+            s.triggerActions();
+            assertEquals(3, registered.get(0).inUse());
+            a.values().get(0).checkin();
+            s.triggerActions();
+            assertEquals(2, registered.get(0).inUse());
+            assertEquals(1, registered.get(0).idle());
+        }
+    }
+
+    @Test
+    public void testClosedPoolEmitsError() throws Exception {
+        Pool<Integer> pool = NonBlockingPool.factory(() -> 1).maxSize(2).buildStriped(2);
+        pool.close();
+        pool.member().test().assertError(PoolClosedException.class);
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.davidmoten.rxjava3.pool.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class IndexedLifoQueueTest {
+
+    @Test
+    public void testIsLifo() {
+        IndexedLifoQueue q = new IndexedLifoQueue(3);
+        q.offer(1);
+        q.offer(2);
+        q.offer(0);
+        assertEquals(0, q.poll());
+        assertEquals(2, q.poll());
+        assertEquals(1, q.poll());
+        assertEquals(IndexedLifoQueue.NONE, q.poll());
+    }
+
+    @Test
+    public void testOfferOfQueuedIndexIsIgnored() {
+        IndexedLifoQueue q = new IndexedLifoQueue(2);
+        q.offer(1);
+        q.offer(0);
+        q.offer(1);
+        assertEquals(0, q.poll());
+        assertEquals(1, q.poll());
+        assertEquals(IndexedLifoQueue.NONE, q.poll());
+    }
+
+    @Test
+    public void testContains() {
+        IndexedLifoQueue q = new IndexedLifoQueue(2);
+        assertFalse(q.contains(1));
+        q.offer(1);
+        assertTrue(q.contains(1));
+        assertFalse(q.contains(0));
+        q.poll();
+        assertFalse(q.contains(1));
+    }
+
+    @Test
+    public void testIsEmpty() {
+        IndexedLifoQueue q = new IndexedLifoQueue(2);
+        assertTrue(q.isEmpty());
+        q.offer(1);
+        assertFalse(q.isEmpty());
+        q.poll();
+        assertTrue(q.isEmpty());
+    }
+
+    @Test
+    public void testClear() {
+        IndexedLifoQueue q = new IndexedLifoQueue(2);
+        q.offer(1);
+        q.offer(0);
+        q.clear();
+        assertEquals(IndexedLifoQueue.NONE, q.poll());
+        // cleared indexes can be offered again
+        q.offer(1);
+        assertEquals(1, q.poll());
+    }
+
+    @Test
+    public void testEmptyCapacity() {
+        IndexedLifoQueue q = new IndexedLifoQueue(0);
+        assertEquals(IndexedLifoQueue.NONE, q.poll());
+    }
+
+    @Test
+    public void testOfferRightAfterPollRemovedIndexIsNotLost() throws InterruptedException {
+        int loops = 10000;
+        IndexedLifoQueue q = new IndexedLifoQueue(1);
+        q.offer(0);
+        // the poller polls once in each odd round and then moves to the next even
+        // round
+        AtomicInteger round = new AtomicInteger();
+        Thread poller = new Thread(() -> {
+            for (int i = 0; i < loops; i++) {
+                while (round.get() != 2 * i + 1) {
+                    Thread.yield();
+                }
+                q.poll();
+                round.set(2 * i + 2);
+            }
+        });
+        poller.start();
+        int lost = 0;
+        for (int i = 0; i < loops; i++) {
+            round.set(2 * i + 1);
+            // offer the index as soon as the poll has taken it off the stack, which
+            // may be before the poll has returned
+            while (!q.isEmpty()) {
+                Thread.yield();
+            }
+            q.offer(0);
+            while (round.get() != 2 * i + 2) {
+                Thread.yield();
+            }
+            if (q.isEmpty()) {
+                lost++;
+                q.offer(0);
+            }
+        }
+        poller.join();
+        assertEquals(0, lost);
+        assertEquals(0, q.poll());
+    }
+
+    @Test
+    public void testConcurrentPollAndOfferDoesNotLoseOrDuplicateIndexes() throws InterruptedException {
+        int capacity = 8;
+        int threads = 4;
+        int loops = 1000;
+        for (int loop = 0; loop < loops; loop++) {
+            IndexedLifoQueue q = new IndexedLifoQueue(capacity);
+            for (int i = 0; i < capacity; i++) {
+                q.offer(i);
+            }
+            CountDownLatch start = new CountDownLatch(1);
+            CountDownLatch finished = new CountDownLatch(threads);
+            AtomicBoolean duplicate = new AtomicBoolean();
+            // each polled index is held exclusively until it is offered again
+            AtomicInteger[] held = new AtomicInteger[capacity];
+            for (int i = 0; i < capacity; i++) {
+                held[i] = new AtomicInteger();
+            }
+            List<Thread> list = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 1000; i++) {
+                            int index = q.poll();
+                            if (index != IndexedLifoQueue.NONE) {
+                                if (held[index].incrementAndGet() != 1) {
+                                    duplicate.set(true);
+                                }
+                                held[index].decrementAndGet();
+                                q.offer(index);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        // ignore
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+                list.add(thread);
+                thread.start();
+            }
+            start.countDown();
+            assertTrue(finished.await(30, TimeUnit.SECONDS));
+            assertFalse(duplicate.get());
+            BitSet polled = new BitSet();
+            int index;
+            while ((index = q.poll()) != IndexedLifoQueue.NONE) {
+                assertFalse(polled.get(index));
+                polled.set(index);
+            }
+            assertEquals(capacity, polled.cardinality());
+        }
+    }
+
+}